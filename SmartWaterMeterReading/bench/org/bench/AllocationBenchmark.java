@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.recognizer.Recognizer;
+import org.recognizer.ScratchBuffers;
+
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+
+/**
+ * Benchmarks of the reading of a decoded picture by the steps used by a task RunnableProcess, with arrays allocated for every
+ * picture and with arrays borrowed from the ScratchBuffers of the thread. The gc profiler (see Main) reports the bytes allocated
+ * per reading (gc.alloc.rate.norm), which should be a small fraction of the size of the picture with the buffers.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+	
+	/** Reads the index of a picture, allocating new arrays.
+	 * @param s - state containing the picture and the meter type.
+	 * @return The index.
+	 */
+	@Benchmark
+	public int readAllocating(PipelineState s) {
+		return read(s, null);
+	}
+	
+	
+	
+	/** Reads the index of a picture with the buffers of the thread.
+	 * @param s - state containing the picture and the meter type.
+	 * @return The index.
+	 */
+	@Benchmark
+	public int readWithScratchBuffers(PipelineState s) {
+		return read(s, ScratchBuffers.get());
+	}
+	
+	
+	
+	private static int read(PipelineState s, ScratchBuffers scratch) {
+		Recognizer r = new Recognizer();
+		r.setScratchBuffers(scratch);
+		ImageProcessor ip_red = r.locateRed(s.ip, 4, 60);
+		ResultsTable blobs = r.findBlob(ip_red, 60);
+		blobs = r.treatBlobs(ip_red, blobs);
+		ImageProcessor ip_dial = r.getDial(s.ip, blobs, s.type);
+		ip_dial = r.binarize(ip_dial);
+		blobs = r.findBlob(ip_dial, 40);
+		List<int[]> order = r.preferredOrder(blobs);
+		int count = r.countCharacters(blobs, order);
+		int length = count*s.type.getCharWidth()*s.type.getCharHeight();
+		double[] features = scratch == null ? new double[length] : scratch.doubles(ScratchBuffers.FEATURES, length);
+		r.getFeatures(ip_dial, blobs, s.type, order, features, 0);
+		int[] numbers = r.getScores(features, count, s.type, order).getDigits();
+		return r.digits2int(numbers, order, blobs);
+	}
+}
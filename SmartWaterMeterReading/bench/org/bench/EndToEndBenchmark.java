@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.recognizer.Recognizer;
+
+import ij.ImagePlus;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+
+/**
+ * Benchmarks of the reading of one picture from beginning to end, as done by a task RunnableProcess of the program reader.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+	
+	/** Reads the index of a picture already decoded.
+	 * @param s - state containing the picture and the meter type.
+	 * @return The index.
+	 */
+	@Benchmark
+	public int readIndex(PipelineState s) {
+		return read(s, s.ip);
+	}
+	
+	
+	
+	/** Decodes a picture and reads its index.
+	 * @param s - state containing the path of the picture and the meter type.
+	 * @return The index.
+	 */
+	@Benchmark
+	public int readFile(PipelineState s) {
+		return read(s, new ImagePlus(s.path).getProcessor());
+	}
+	
+	
+	
+	private static int read(PipelineState s, ImageProcessor ip) {
+		Recognizer r = new Recognizer();
+		ImageProcessor ip_red = r.findRed(ip);
+		ResultsTable blobs = r.findBlob(ip_red, 60);
+		blobs = r.treatBlobs(ip_red, blobs);
+		ImageProcessor ip_dial = r.getDial(ip, blobs, s.type);
+		ip_dial = r.binarize(ip_dial);
+		blobs = r.findBlob(ip_dial, 40);
+		List<int[]> order = r.preferredOrder(blobs);
+		double[] features = r.getFeatures(ip_dial, blobs, s.type, order);
+		int count = features.length/(s.type.getCharWidth()*s.type.getCharHeight());
+		int[] numbers = r.getScores(features, count, s.type, order).getDigits();
+		return r.digits2int(numbers, order, blobs);
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class contains the main function of the benchmarks. It runs StageBenchmark, EndToEndBenchmark and AllocationBenchmark
+ * (or the benchmarks matching the regular expressions given as arguments) with the gc profiler, that reports the allocation rate
+ * of each benchmark.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class Main {
+	
+	/**
+	 * @param args - regular expressions selecting the benchmarks to run. By default all benchmarks of the package are run.
+	 * @throws RunnerException
+	 */
+	public static void main(String[] args) throws RunnerException {
+		ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class);
+		if (args.length == 0) {
+			options.include("org\\.bench\\..*");
+		}
+		for (String arg:args) {
+			options.include(arg);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.encog.ml.data.MLDataSet;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.recognizer.Recognizer;
+import org.recognizer.TypeSpec;
+import org.recognizer.TypeSpecRegistry;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+
+/**
+ * State of the benchmarks: one picture of the folders images/chiffres and images/mesures, the meter type res/GWF_MTK and the
+ * result of each step of the image processing, computed once so that each benchmark of StageBenchmark measures one step only.
+ * Paths are relative to the folder given by the system property swmr.home (by default the working directory).
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+@State(Scope.Thread)
+public class PipelineState {
+	
+	/** Picture to read, relative to the folder images. */
+	@Param({"chiffres/20120309-172057.jpg", "chiffres/20120309-181928.jpg", "chiffres/20120309-205837.jpg",
+		"chiffres/20120309-214033.jpg", "chiffres/20120309-224014.jpg", "chiffres/20120310-074804.jpg",
+		"chiffres/20120310-082531.jpg", "mesures/cpt38.JPG"})
+	public String image;
+	
+	/** Type of the meter, in the folder res. */
+	@Param({"GWF_MTK"})
+	public String meterType;
+	
+	public String path;
+	public TypeSpec type;
+	public Recognizer recognizer;
+	
+	public ImageProcessor ip;
+	public ImageProcessor ipRed;
+	public ResultsTable treatedBlobs;
+	public ImageProcessor ipDial;
+	public ImageProcessor ipBinary;
+	public ResultsTable dialBlobs;
+	public List<int[]> order;
+	public ImageStack chars;
+	public MLDataSet charsDataSet;
+	public double[] features;
+	
+	
+	
+	/** Loads the picture and the meter type and runs the image processing once.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, ClassNotFoundException {
+		File home = new File(System.getProperty("swmr.home", "."));
+		path = new File(home, "images/" + image).getPath();
+		type = new TypeSpecRegistry(new File(home, "res").getPath()).get(meterType);
+		
+		recognizer = new Recognizer();
+		ip = new ImagePlus(path).getProcessor();
+		ipRed = recognizer.findRed(ip);
+		treatedBlobs = recognizer.treatBlobs(ipRed, recognizer.findBlob(ipRed, 60));
+		ipDial = recognizer.getDial(ip, treatedBlobs, type);
+		ipBinary = recognizer.binarize(ipDial);
+		dialBlobs = recognizer.findBlob(ipBinary, 40);
+		order = recognizer.preferredOrder(dialBlobs);
+		chars = recognizer.getCharacters(ipBinary, dialBlobs, type, order);
+		charsDataSet = recognizer.imageStack2MLDataSet(chars);
+		features = recognizer.getFeatures(ipBinary, dialBlobs, type, order);
+	}
+}
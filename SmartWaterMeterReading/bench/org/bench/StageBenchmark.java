@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.encog.ml.data.MLDataSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.recognizer.DigitScores;
+
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+
+/**
+ * Benchmarks of each step of the image processing done by the program reader, on the results of the previous step stored in
+ * PipelineState.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+	
+	@Benchmark
+	public ImageProcessor findRed(PipelineState s) {
+		return s.recognizer.findRed(s.ip);
+	}
+	
+	
+	
+	@Benchmark
+	public ResultsTable findBlobRed(PipelineState s) {
+		return s.recognizer.findBlob(s.ipRed, 60);
+	}
+	
+	
+	
+	@Benchmark
+	public ResultsTable treatBlobs(PipelineState s) {
+		return s.recognizer.treatBlobs(s.ipRed, s.treatedBlobs);
+	}
+	
+	
+	
+	@Benchmark
+	public ImageProcessor getDial(PipelineState s) {
+		return s.recognizer.getDial(s.ip, s.treatedBlobs, s.type);
+	}
+	
+	
+	
+	@Benchmark
+	public ImageProcessor binarize(PipelineState s) {
+		return s.recognizer.binarize(s.ipDial);
+	}
+	
+	
+	
+	@Benchmark
+	public ResultsTable findBlobDial(PipelineState s) {
+		return s.recognizer.findBlob(s.ipBinary, 40);
+	}
+	
+	
+	
+	@Benchmark
+	public ImageStack getCharacters(PipelineState s) {
+		return s.recognizer.getCharacters(s.ipBinary, s.dialBlobs, s.type, s.order);
+	}
+	
+	
+	
+	@Benchmark
+	public MLDataSet imageStack2MLDataSet(PipelineState s) {
+		return s.recognizer.imageStack2MLDataSet(s.chars);
+	}
+	
+	
+	
+	@Benchmark
+	public int[] getNumbers(PipelineState s) {
+		return s.recognizer.getNumbers(s.charsDataSet, s.type, s.order);
+	}
+	
+	
+	
+	@Benchmark
+	public double[] getFeatures(PipelineState s) {
+		return s.recognizer.getFeatures(s.ipBinary, s.dialBlobs, s.type, s.order);
+	}
+	
+	
+	
+	@Benchmark
+	public DigitScores getScores(PipelineState s) {
+		return s.recognizer.getScores(s.features, s.features.length/(s.type.getCharWidth()*s.type.getCharHeight()), s.type, s.order);
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.addtype;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.recognizer.TypeSpecFormat;
+import org.recognizer.TypeSpecRegistry;
+
+/**
+ * This class contains a program that converts meter types stored as serialized TypeSpec objects (as created by previous versions
+ * of the program addtype) to the binary format of TypeSpecFormat.
+ * 
+ * Usage: java -cp addtype.jar org.addtype.ConvertType [type ...]
+ * Each type is read from the folder res and replaced by its binary version. Without argument, all the types of the folder res
+ * are converted. Types that are already binary are left unchanged.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class ConvertType {
+
+	/**
+	 * @param args - names of the types to convert.
+	 */
+	public static void main(String[] args) {
+		String[] names = args;
+		if (names.length == 0) {
+			names = new File("res").list();
+			if (names == null) {
+				System.err.println("Folder res not found.");
+				System.exit(1);
+			}
+		}
+		
+		int failures = 0;
+		for (String name:names) {
+			try {
+				if (convert(new File("res", name))) {
+					System.out.println(name + " converted.");
+				} else {
+					System.out.println(name + " already binary.");
+				}
+			} catch (Exception e) {
+				System.err.println(name + " not converted: " + e);
+				failures++;
+			}
+		}
+		System.exit(failures == 0 ? 0 : 1);
+	}
+	
+	
+	
+	/** Converts a meter type file to the binary format.
+	 * The original file is replaced atomically by its binary version (see TypeSpecFormat.replace()), so that the type is never
+	 * missing, even for a reader running at the same time.
+	 * @param file - file containing a serialized TypeSpec.
+	 * @return false if the file was already binary.
+	 * @throws IOException
+	 * @throws ClassNotFoundException if the file does not contain a TypeSpec.
+	 */
+	public static boolean convert(File file) throws IOException, ClassNotFoundException {
+		if (TypeSpecFormat.isBinary(file)) return false;
+		
+		TypeSpecFormat.replace(TypeSpecRegistry.read(file), file);
+		return true;
+	}
+}
@@ -216,7 +216,7 @@ public abstract class GUI {
 				new MessageDialog(null, "Warning", "Cette image n'a pas pu tre traite.");
 				continue;
 			}
-			ip_dial =  r.binarize(ip_dial);
+			ip_dial =  r.binarize(ip_dial, type, 1);
 			blobs =  r.findBlob(ip_dial, 40);
 			List<int[]> order = r.preferredOrder(blobs);
 			ImageStack chars = r.getCharacters(ip_dial, blobs, type, order);
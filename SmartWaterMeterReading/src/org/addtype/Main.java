@@ -23,19 +23,25 @@
  */
 package org.addtype;
 
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+
+import ij.gui.MessageDialog;
 
 import org.encog.neural.som.SOM;
+import org.recognizer.Binarizer;
 import org.recognizer.TypeSpec;
+import org.recognizer.TypeSpecFormat;
 
 /**
  * This class contains the main function of the program addtype.
  * It creates a object of class GUI and calls methods on it.
  * 
  * The program addtype allows the user to register a new type of water meter. For now, it works only with meters of type GWF MTK so basically you can add GWF MTK types with different diameters.
+ * The dial of the new type is binarized with a fixed level, or with the method given by the system property swmr.binarization
+ * (sauvola or bradley, see Binarizer), whose window and parameter can be given by swmr.binarization.window and
+ * swmr.binarization.k. The templates of the digits are chosen on dials binarized with this method.
  * 
  * @author pauline ruegg-reymond
  *
@@ -49,6 +55,16 @@ public class Main {
 
 		TypeSpec newType = new TypeSpec();
 		
+		/* The binarization is checked first, so that a mistake in the options is reported before the user starts.
+		 */
+		try {
+			setBinarization(newType);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			new MessageDialog(null, "Warning", "Options de binarisation incorrectes: " + e.getMessage());
+			System.exit(1);
+		}
+		
 		String typeName = GUI.name();
 		if (typeName == null) System.exit(0);
 		
@@ -78,14 +94,8 @@ public class Main {
 		if (net == null) System.exit(0);
 		newType.setNet(net);
 		
-		FileOutputStream fos;
 		try {
-			fos = new FileOutputStream("res/" + typeName);
-			ObjectOutputStream oos = new ObjectOutputStream(fos);
-			
-			oos.writeObject(newType);
-			oos.close();
-			
+			TypeSpecFormat.replace(newType, new File("res/" + typeName));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -93,4 +103,29 @@ public class Main {
 		}
 		System.exit(0);
 	}
+	
+	
+	
+	/** Sets the binarization method of a new type from the system properties swmr.binarization, swmr.binarization.window and
+	 * swmr.binarization.k.
+	 * @param type - new type.
+	 * @throws IllegalArgumentException if a property has a wrong value (NumberFormatException for a wrong number).
+	 */
+	private static void setBinarization(TypeSpec type) {
+		int method = Binarizer.method(System.getProperty("swmr.binarization", "fixed"));
+		int window;
+		double k;
+		try {
+			window = Integer.parseInt(System.getProperty("swmr.binarization.window", "0").trim());
+			k = Double.parseDouble(System.getProperty("swmr.binarization.k", "0").trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("swmr.binarization.window should be an integer and swmr.binarization.k a number (" + e.getMessage() + ").");
+		}
+		if (window < 0 || !(k >= 0)) {
+			throw new IllegalArgumentException("swmr.binarization.window and swmr.binarization.k should not be negative.");
+		}
+		type.setBinarization(method);
+		type.setBinarizationWindow(window);
+		type.setBinarizationK(k);
+	}
 }
@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class separates the blocking file operations of the program reader from the reading of the pictures.
+ * The content of the file of each submitted task is read by an I/O thread (see RunnableProcess.load()), which then submits the
+ * task to another PictureReader, whose fixed number of threads only decode and recognize pictures from memory. Other blocking
+ * operations, such as moving the pictures once read (see ResultPublisher), can be run by the I/O threads with execute().
+ * So a slow storage blocks only I/O threads, which cost little, and not the threads doing the pixel work.
+ * 
+ * I/O threads are virtual threads when the Java runtime has them (Java 21 and later), otherwise daemon platform threads created
+ * as needed. The number of files being read or waiting for space in the other reader is bounded, so that the content of at most
+ * this number of pictures is in memory in addition to the pictures queued by the other reader.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class AsyncIoReader implements PictureReader, Executor {
+	
+	private PictureReader cpu;
+	private ExecutorService io;
+	private Semaphore loads;
+	private AtomicInteger inFlight = new AtomicInteger();
+	private volatile boolean shutdown;
+	private boolean cpuShutdown;
+	
+	
+	
+	/**
+	 * Reads at most four files per processor at a time.
+	 * @param cpu - reader to which the tasks are submitted once their file is read.
+	 */
+	public AsyncIoReader(PictureReader cpu) {
+		this(cpu, 4*Runtime.getRuntime().availableProcessors());
+	}
+	
+	
+	
+	/**
+	 * @param cpu - reader to which the tasks are submitted once their file is read.
+	 * @param maxLoads - maximal number of files read, or read and waiting to be submitted, at a time.
+	 */
+	public AsyncIoReader(PictureReader cpu, int maxLoads) {
+		if (maxLoads < 1) {
+			throw new IllegalArgumentException("maxLoads should be positive.");
+		}
+		this.cpu = cpu;
+		this.io = newIoExecutor();
+		this.loads = new Semaphore(maxLoads);
+	}
+	
+	
+	
+	/** Submits a task: its file is read by an I/O thread, then the task is submitted to the other reader. If the file cannot be
+	 * read, the task is submitted anyway and fails or reads the file itself. Blocks while the maximal number of files are read.
+	 * @param rp - task to run.
+	 * @return A future that is done when the task is finished.
+	 */
+	@Override
+	public Future<RunnableProcess> submit(final RunnableProcess rp) {
+		if (shutdown) {
+			throw new RejectedExecutionException("The reader has been shut down.");
+		}
+		try {
+			loads.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException(e);
+		}
+		
+		final Submission submission = new Submission();
+		inFlight.incrementAndGet();
+		try {
+			io.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						try {
+							rp.load();
+						} catch (IOException e) {
+							// read again by the task, which reports the failure
+						}
+						submission.set(cpu.submit(rp), null);
+					} catch (RuntimeException e) {
+						submission.set(null, e);
+					} finally {
+						loads.release();
+						loaded();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loads.release();
+			loaded();
+			throw e;
+		}
+		return submission;
+	}
+	
+	
+	
+	/** Runs a blocking operation, such as publishing a finished task, in an I/O thread.
+	 * @param command - operation to run.
+	 */
+	@Override
+	public void execute(Runnable command) {
+		io.execute(command);
+	}
+	
+	
+	
+	@Override
+	public RunnableProcess poll() {
+		return cpu.poll();
+	}
+	
+	
+	
+	@Override
+	public RunnableProcess take() throws InterruptedException {
+		return cpu.take();
+	}
+	
+	
+	
+	/** Stops accepting new tasks. The files already submitted are still read, then the other reader is shut down.
+	 */
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		shutdownCpu();
+	}
+	
+	
+	
+	/** Waits until all submitted tasks are done after a call to shutdown(), then until the operations run by execute() are done.
+	 * @param timeout - maximal time to wait.
+	 * @param unit - unit of 'timeout'.
+	 * @return true if all tasks and operations are done, false if the timeout elapsed before.
+	 * @throws InterruptedException
+	 */
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		if (!cpu.awaitTermination(timeout, unit)) {
+			return false;
+		}
+		io.shutdown();
+		return io.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+	
+	
+	
+	/* Called by an I/O thread once a task was submitted to the other reader (or could not be).
+	 */
+	private void loaded() {
+		if (inFlight.decrementAndGet() == 0 && shutdown) {
+			shutdownCpu();
+		}
+	}
+	
+	
+	
+	/* Shuts the other reader down once shutdown() was called and no file is being read anymore.
+	 */
+	private synchronized void shutdownCpu() {
+		if (cpuShutdown || !shutdown || inFlight.get() > 0) return;
+		cpuShutdown = true;
+		cpu.shutdown();
+	}
+	
+	
+	
+	/* Creates an executor starting a virtual thread per task if the Java runtime has virtual threads, or a pool of daemon
+	 * threads created as needed otherwise.
+	 */
+	private static ExecutorService newIoExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(new IoThreadFactory());
+		}
+	}
+	
+	
+	
+	/**
+	 * Future of a submitted task, done when the task is finished by the other reader.
+	 */
+	private static class Submission implements Future<RunnableProcess> {
+		
+		private CountDownLatch submitted = new CountDownLatch(1);
+		private volatile Future<RunnableProcess> future;
+		private volatile RuntimeException failure;
+		
+		private void set(Future<RunnableProcess> future, RuntimeException failure) {
+			this.future = future;
+			this.failure = failure;
+			submitted.countDown();
+		}
+		
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return submitted.getCount() == 0 && future != null && future.cancel(mayInterruptIfRunning);
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			return future != null && future.isCancelled();
+		}
+		
+		@Override
+		public boolean isDone() {
+			return submitted.getCount() == 0 && (future == null || future.isDone());
+		}
+		
+		@Override
+		public RunnableProcess get() throws InterruptedException, ExecutionException {
+			submitted.await();
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+			return future.get();
+		}
+		
+		@Override
+		public RunnableProcess get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			if (!submitted.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+			return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	
+	
+	/**
+	 * Creates named daemon I/O threads.
+	 */
+	private static class IoThreadFactory implements ThreadFactory {
+		
+		private AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "io-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class contains a fixed pool of worker threads that run RunnableProcess tasks.
+ * The pool has a bounded work queue: when it is full, submit() blocks until a worker takes a new task, so that the number of
+ * pending tasks never exceeds the capacity of the queue whatever the number of pictures to read.
+ * Finished tasks are returned by poll() and take() in the order they finish, not in the order they were submitted.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class BatchReader implements PictureReader {
+
+	private ThreadPoolExecutor executor;
+	private CompletionService<RunnableProcess> completion;
+
+
+
+	/**
+	 * Creates a pool with one worker per available processor and a queue of two tasks per worker.
+	 */
+	public BatchReader() {
+		this(Runtime.getRuntime().availableProcessors(), 2*Runtime.getRuntime().availableProcessors());
+	}
+
+
+
+	/**
+	 * @param nThreads - number of worker threads.
+	 * @param queueCapacity - maximal number of tasks waiting for a worker.
+	 */
+	public BatchReader(int nThreads, int queueCapacity) {
+		if (nThreads < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("nThreads and queueCapacity should be positive.");
+		}
+		executor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new WorkerFactory(), new BlockingPolicy());
+		completion = new ExecutorCompletionService<RunnableProcess>(executor);
+	}
+
+
+
+	/** Submits a task to the pool. Blocks while the work queue is full.
+	 * @param rp - task to run.
+	 * @return A future that is done when the task is finished.
+	 */
+	@Override
+	public Future<RunnableProcess> submit(RunnableProcess rp) {
+		return completion.submit(rp, rp);
+	}
+
+
+
+	/** Gets the next finished task, if any.
+	 * @return The task that finished first among the finished tasks not yet returned, or null if there is none.
+	 */
+	@Override
+	public RunnableProcess poll() {
+		Future<RunnableProcess> f = completion.poll();
+		if (f == null) return null;
+		return result(f);
+	}
+
+
+
+	/** Gets the next finished task, waiting for one if none is finished yet.
+	 * @return The task that finished first among the finished tasks not yet returned.
+	 * @throws InterruptedException
+	 */
+	@Override
+	public RunnableProcess take() throws InterruptedException {
+		return result(completion.take());
+	}
+
+
+
+	/** Stops accepting new tasks. Tasks already submitted are still run.
+	 */
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+
+
+	/** Waits until all submitted tasks are done after a call to shutdown().
+	 * @param timeout - maximal time to wait.
+	 * @param unit - unit of 'timeout'.
+	 * @return true if all tasks are done, false if the timeout elapsed before.
+	 * @throws InterruptedException
+	 */
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+
+
+	private static RunnableProcess result(Future<RunnableProcess> f) {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+
+
+	/**
+	 * Puts rejected tasks in the work queue, waiting for space if needed, instead of rejecting them.
+	 */
+	private static class BlockingPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("The reader has been shut down.");
+			}
+			try {
+				executor.getQueue().put(r);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(e);
+			}
+		}
+	}
+
+
+
+	/**
+	 * Creates named worker threads.
+	 */
+	private static class WorkerFactory implements ThreadFactory {
+
+		private AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "reader-" + count.incrementAndGet());
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts values (durations in nanoseconds, numbers of bytes) in logarithmic buckets, as HdrHistogram does: each power
+ * of two is divided in 8 linear sub-buckets, so that percentiles are known with a relative error below 12.5% whatever the range
+ * of the values, in a fixed array of counters. Values can be recorded by several threads without locking.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	/* The highest bit of a positive long is at most bit 62. */
+	private static final int BUCKETS = (63 - SUB_BITS + 1)*SUB_COUNT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	
+	
+	/** Records a value.
+	 * @param value - value to record. Negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value));
+	}
+	
+	
+	
+	/**
+	 * @return The number of recorded values.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	
+	
+	/**
+	 * @return The sum of the recorded values.
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+	
+	
+	
+	/**
+	 * @return The mean of the recorded values, or 0 if there is none.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get()/n;
+	}
+	
+	
+	
+	/**
+	 * @return The largest recorded value.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	
+	
+	/** Gets a percentile of the recorded values.
+	 * @param percentile - percentile between 0 and 100.
+	 * @return The largest value of the bucket containing the percentile, or 0 if no value was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile/100.0*n));
+		long seen = 0;
+		for (int i=0;i<counts.length();i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+	
+	
+	
+	/** Forgets all recorded values.
+	 */
+	public void reset() {
+		for (int i=0;i<counts.length();i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+	
+	
+	
+	/* Values below SUB_COUNT have their own bucket. Above, the bucket is given by the position of the highest bit and the
+	 * SUB_BITS bits that follow it.
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_COUNT) return (int) value;
+		int e = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (e - SUB_BITS)) & (SUB_COUNT - 1);
+		return (e - SUB_BITS + 1)*SUB_COUNT + sub;
+	}
+	
+	
+	
+	private static long lowestValue(int bucket) {
+		if (bucket < SUB_COUNT) return bucket;
+		int e = bucket/SUB_COUNT + SUB_BITS - 1;
+		int sub = bucket%SUB_COUNT;
+		return (long) (SUB_COUNT + sub) << (e - SUB_BITS);
+	}
+	
+	
+	
+	private static long highestValue(int bucket) {
+		if (bucket < SUB_COUNT) return bucket;
+		if (bucket + 1 == BUCKETS) return Long.MAX_VALUE;
+		return lowestValue(bucket + 1) - 1;
+	}
+}
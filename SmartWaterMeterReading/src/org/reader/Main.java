@@ -24,64 +24,334 @@
 package org.reader;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import org.recognizer.TypeSpecRegistry;
 
-import ij.ImagePlus;
 import ij.gui.MessageDialog;
 
 
 /**
  * This class contains the main function of the program reader.
- * It lists jpg files in the folder images/test/queue and launches a thread RunnableProcess for each image. Then it collects the index that was read on the picture, renames the file with this index and moves it to the folder images/test/res.
+ * It lists jpg files (ending with .jpg or .jpeg in any case, see QueueWatcher.isPicture) in the folder images/test/queue and submits a task RunnableProcess for each image to a BatchReader, that reads the images with a fixed number of threads. As soon as an image is read, it collects the index that was read on the picture, renames the file with this index and moves it to the folder images/test/res (see ResultPublisher).
+ * With the system property swmr.metrics set to true, the duration of each step of the reading is measured (see ReaderMetrics) and
+ * a summary is printed when all the images are read. The measures can also be enabled and queried through JMX while the program runs.
+ * With the argument --watch, the program does not stop once the images of the folder are read: it keeps watching the folder (see
+ * QueueWatcher) and reads the images as they arrive, with the same threads and meter type, until it is stopped.
+ * A line per image is added to the file images/test/results.csv (see ResultWriter). Another file can be chosen with the system
+ * property swmr.results (a name ending with .jsonl gives JSON lines), and an empty value disables the file.
+ * With the system property swmr.stages set to four numbers of threads (e.g. 2,2,2,1), the images are read by a StagedReader
+ * with these numbers of threads for its stages decode, localise, extract and classify instead of a BatchReader.
+ * With the system property swmr.decode set to regions, only a reduced preview of each image and the region of the hands and the
+ * dial are decoded (see PictureDecoder), instead of the whole image.
+ * With the system property swmr.io set to async, the files are read and the images are moved by I/O threads (see AsyncIoReader),
+ * so that the threads reading the images never wait for the storage.
  *
- * The program reader performs index reading on pictures of meters of the type GWF MTK. Image files (jpg) have to be placed in the folder images/test/queue. The program reads the index, renames the file with this index and moves it to the folder images/test/res. If it is unable to read an image, the file remains in the folder images/test/queue and in case you ran the program in command line, an error message will be displayed.
+ * The program reader performs index reading on pictures of meters of the type GWF MTK. Image files (jpg) have to be placed in the folder images/test/queue. The program reads the index, renames the file with this index and moves it to the folder images/test/res. If it is unable to read an image, the file is moved with its name to the folder images/test/failed and in case you ran the program in command line, an error message will be displayed.
  * 
  * @author pauline ruegg-reymond
  *
  */
 public class Main {
 
+	/** Time in milliseconds during which the size of a new image must not change before it is read in watch mode. */
+	private static final long SETTLE_MILLIS = 1000;
+	
+	/** Time in milliseconds during which a new image that does not end with the end of image marker of JPEG files must not
+	 * change before it is read anyway in watch mode. */
+	private static final long INCOMPLETE_MILLIS = 60000;
+	
+	private static final ResultPublisher PUBLISHER = new ResultPublisher(new File("images/test/res"), new File("images/test/failed"));
+	
+	private static final boolean REGION_DECODING = "regions".equals(System.getProperty("swmr.decode"));
+	
+	private static final boolean ASYNC_IO = "async".equals(System.getProperty("swmr.io"));
+	
+	private static ResultWriter results;
+	
+	
+	
 	/**
-	 * @param args
+	 * @param args - --watch to keep reading the images that arrive in the folder.
 	 */
 	public static void main(String[] args) {
 		/* TODO
 		 * Le meterType devrait tre inclus dans l'exif de l'image, donc a devrait suffire d'avoir le chemin de l'image.
 		 * On peut aussi imaginer de passer le chemin de la file  scruter en paramtre de l'application.
 		 */
-		new MessageDialog(null, "Information", "Le programme va lire les images que vous avez places dans le dossier images/tes/queue, les renommer par l'index trouv et les dplacer dans le dossier images/tes/res");
+		boolean watch = args.length > 0 && args[0].equals("--watch");
+		if (!watch) {
+			new MessageDialog(null, "Information", "Le programme va lire les images que vous avez places dans le dossier images/tes/queue, les renommer par l'index trouv et les dplacer dans le dossier images/tes/res");
+		}
 		
 		String meterType = "GWF_MTK";
+		try {
+			TypeSpecRegistry.getDefault().get(meterType);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		ReaderMetrics metrics = ReaderMetrics.getDefault();
+		try {
+			metrics.register();
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		
+		String resultsPath = System.getProperty("swmr.results", "images/test/results.csv");
+		if (resultsPath.length() > 0) {
+			try {
+				results = new ResultWriter(new File(resultsPath));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		if (watch) {
+			watch(newReader(), meterType);
+			return;
+		}
+		
 		String[] paths = (new File("images/test/queue")).list();
-		List<RunnableProcess> rplist = new ArrayList<RunnableProcess>();
 		
-		int i=0;
+		PictureReader reader = newReader();
+		int pending = 0;
 		for (String path:paths) {
-			if (!path.contains("jpg")) continue;
-			ImagePlus im = new ImagePlus("images/test/queue/"+path);
-			RunnableProcess rp = new RunnableProcess(im, meterType);
-			rp.start();
-			rplist.add(i, rp);
-			i++;
+			if (!QueueWatcher.isPicture(path)) continue;
+			reader.submit(newTask("images/test/queue/"+path, meterType));
+			pending++;
+			
+			RunnableProcess rp;
+			while ((rp = reader.poll()) != null) {
+				publish(reader, rp, null, null);
+				pending--;
+			}
 		}
+		reader.shutdown();
 		
-		ListIterator<RunnableProcess> li = rplist.listIterator();
+		try {
+			while (pending > 0) {
+				publish(reader, reader.take(), null, null);
+				pending--;
+			}
+			reader.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		closeResults();
 		
-		while (li.hasNext()) {
-			int j = li.nextIndex();
-			RunnableProcess rp = li.next();
-			String path = paths[j];
-			
-			while (rp.getState() != Thread.State.TERMINATED){}
-			
-			String dstPath = Integer.toString(rp.getIndex());
-			
-			File src = new File("images/test/queue/"+path);
-			File dst = new File("images/test/res/"+dstPath+".jpg");
-			
-			src.renameTo(dst);
+		if (metrics.isEnabled()) {
+			System.out.println(metrics.getSummary());
+		}
+	}
+	
+	
+	
+	/** Reads the images of the folder images/test/queue as they arrive, until the program is stopped (or the thread interrupted).
+	 * When the program is stopped, the images already submitted are read and published before it exits.
+	 * @param reader - pool of threads reading the images.
+	 * @param meterType - type of the meters on the images.
+	 */
+	private static void watch(PictureReader reader, String meterType) {
+		QueueWatcher watcher;
+		try {
+			watcher = new QueueWatcher(new File("images/test/queue"), SETTLE_MILLIS, INCOMPLETE_MILLIS);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		final Thread mainThread = Thread.currentThread();
+		Thread hook = new Thread("reader-shutdown") {
+			@Override
+			public void run() {
+				mainThread.interrupt();
+				try {
+					mainThread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(hook);
+		
+		Queue<File> published = new ConcurrentLinkedQueue<File>();
+		Queue<File> unmoved = new ConcurrentLinkedQueue<File>();
+		int pending = 0;
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				for (File f:watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) {
+					reader.submit(newTask(f.getPath(), meterType));
+					pending++;
+				}
+				RunnableProcess rp;
+				while ((rp = reader.poll()) != null) {
+					publish(reader, rp, published, unmoved);
+					pending--;
+				}
+				File f;
+				while ((f = published.poll()) != null) {
+					watcher.forget(f);
+				}
+				while ((f = unmoved.poll()) != null) {
+					watcher.retry(f);
+				}
+				if (pending == 0) {
+					flushResults();
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} catch (RejectedExecutionException e) {
+			// stopped while waiting for space in the queue
+		}
+		
+		Thread.interrupted();
+		reader.shutdown();
+		try {
+			while (pending > 0) {
+				publish(reader, reader.take(), null, null);
+				pending--;
+			}
+			reader.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			watcher.close();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		closeResults();
+		
+		ReaderMetrics metrics = ReaderMetrics.getDefault();
+		if (metrics.isEnabled()) {
+			System.out.println(metrics.getSummary());
+		}
+	}
+	
+	
+	
+	/** Creates the task reading an image, with the way of decoding it chosen by the system property swmr.decode.
+	 * @param path - path of the image.
+	 * @param meterType - type of the meter on the image.
+	 * @return The task.
+	 */
+	private static RunnableProcess newTask(String path, String meterType) {
+		RunnableProcess rp = new RunnableProcess(path, meterType);
+		rp.setRegionDecoding(REGION_DECODING);
+		return rp;
+	}
+	
+	
+	
+	/** Creates the pool of threads reading the images: a StagedReader if the system property swmr.stages gives the numbers of
+	 * threads of its stages, a BatchReader otherwise.
+	 * @return The pool.
+	 */
+	private static PictureReader newReader() {
+		PictureReader reader;
+		String stages = System.getProperty("swmr.stages", "");
+		if (stages.length() == 0) {
+			reader = new BatchReader();
+		} else {
+			String[] n = stages.split(",");
+			if (n.length != StagedReader.STAGES.length) {
+				throw new IllegalArgumentException("swmr.stages should give the numbers of threads of the stages decode, localise, extract and classify.");
+			}
+			reader = new StagedReader(Integer.parseInt(n[0].trim()), Integer.parseInt(n[1].trim()), Integer.parseInt(n[2].trim()),
+					Integer.parseInt(n[3].trim()), 2*Runtime.getRuntime().availableProcessors(), 8);
+		}
+		return ASYNC_IO ? new AsyncIoReader(reader) : reader;
+	}
+	
+	
+	
+	/** Publishes a finished task, in an I/O thread of the reader if it has some (see AsyncIoReader), in the calling thread
+	 * otherwise.
+	 * @param reader - pool of threads that read the image.
+	 * @param rp - finished task.
+	 * @param published - queue to which the image is added once moved, or null.
+	 * @param unmoved - queue to which the image is added if it could not be moved, or null.
+	 */
+	private static void publish(PictureReader reader, final RunnableProcess rp, final Queue<File> published,
+			final Queue<File> unmoved) {
+		Runnable command = new Runnable() {
+			@Override
+			public void run() {
+				Queue<File> q = publish(rp) ? published : unmoved;
+				if (q != null) {
+					q.add(new File(rp.getPath()));
+				}
+			}
+		};
+		if (reader instanceof Executor) {
+			((Executor) reader).execute(command);
+		} else {
+			command.run();
+		}
+	}
+	
+	
+	
+	/** Renames the image read by a finished task with the index found and moves it to the folder images/test/res, or moves it to
+	 * the folder images/test/failed if its index could not be read.
+	 * @param rp - finished task.
+	 * @return true if the image was moved.
+	 */
+	private static boolean publish(RunnableProcess rp) {
+		File src = new File(rp.getPath());
+		File dst = null;
+		try {
+			dst = PUBLISHER.publish(rp);
+			if (rp.isSuccessful()) {
+				System.out.println(src.getName() + " -> " + dst.getName() + " (" + Math.round(rp.getLatency()) + " ms)");
+			} else {
+				System.out.println(src.getName() + " -> " + dst.getParentFile().getName() + "/" + dst.getName() + ": " + rp.getFailure());
+			}
+		} catch (IOException e) {
+			System.out.println(src.getName() + " could not be moved: " + e);
+		}
+		
+		if (results != null) {
+			try {
+				results.write(rp, dst);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return dst != null;
+	}
+	
+	
+	
+	/* Writes the lines buffered by the file of results.
+	 */
+	private static void flushResults() {
+		if (results == null) return;
+		try {
+			results.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	
+	
+	/* Closes the file of results.
+	 */
+	private static void closeResults() {
+		if (results == null) return;
+		try {
+			results.close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 }
@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import ij.process.ColorProcessor;
+
+/**
+ * This class decodes a picture with javax.imageio, from its file or from its content already in memory, either whole, reduced or
+ * only a region of it, so that a picture can be read without holding all its pixels in memory: a preview reduced by the coarse factor is enough to find where the hands and the dial
+ * are, and only that region is then decoded at full resolution.
+ * 
+ * The pixels are the same as with ImagePlus for the JPEG files of the meters. Note that the JPEG reader of javax.imageio decodes
+ * the whole file even for a reduced or partial image: what is saved is the memory of the pixels that are not kept, not the
+ * time of the decoding.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class PictureDecoder implements Closeable {
+	
+	private final String name;
+	private final ImageInputStream input;
+	private final ImageReader reader;
+	
+	
+	
+	/** Opens a picture and reads its header.
+	 * @param file - the picture.
+	 * @throws IOException if the file cannot be read or is not a picture.
+	 */
+	public PictureDecoder(File file) throws IOException {
+		this(ImageIO.createImageInputStream(file), file.getPath());
+	}
+	
+	
+	
+	/** Reads the header of a picture already read in memory (see AsyncIoReader).
+	 * @param data - content of the file of the picture.
+	 * @param name - name of the picture, for the messages of the exceptions.
+	 * @throws IOException if the data is not a picture.
+	 */
+	public PictureDecoder(byte[] data, String name) throws IOException {
+		this(new MemoryCacheImageInputStream(new ByteArrayInputStream(data)), name);
+	}
+	
+	
+	
+	private PictureDecoder(ImageInputStream input, String name) throws IOException {
+		this.name = name;
+		this.input = input;
+		if (input == null) {
+			throw new IOException("Cannot open " + name + ".");
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			input.close();
+			throw new IOException("Cannot decode " + name + ".");
+		}
+		reader = readers.next();
+		reader.setInput(input, false, true);
+	}
+	
+	
+	
+	public int getWidth() throws IOException {
+		return reader.getWidth(0);
+	}
+	
+	
+	
+	public int getHeight() throws IOException {
+		return reader.getHeight(0);
+	}
+	
+	
+	
+	/** Decodes the whole picture.
+	 * @return The picture.
+	 * @throws IOException
+	 */
+	public ColorProcessor decode() throws IOException {
+		return read(reader.getDefaultReadParam());
+	}
+	
+	
+	
+	/** Decodes one pixel out of 'factor' in both directions.
+	 * @param factor - reduction factor.
+	 * @return The preview: pixel (i, j) is pixel (i*factor + factor/2, j*factor + factor/2) of the picture.
+	 * @throws IOException
+	 */
+	public ColorProcessor decodePreview(int factor) throws IOException {
+		ImageReadParam param = reader.getDefaultReadParam();
+		param.setSourceSubsampling(factor, factor, factor/2, factor/2);
+		return read(param);
+	}
+	
+	
+	
+	/** Decodes a region of the picture at full resolution.
+	 * @param region - region to decode. It must be inside the picture.
+	 * @return The region.
+	 * @throws IOException
+	 */
+	public ColorProcessor decodeRegion(Rectangle region) throws IOException {
+		ImageReadParam param = reader.getDefaultReadParam();
+		param.setSourceRegion(region);
+		return read(param);
+	}
+	
+	
+	
+	@Override
+	public void close() throws IOException {
+		reader.dispose();
+		input.close();
+	}
+	
+	
+	
+	private ColorProcessor read(ImageReadParam param) throws IOException {
+		BufferedImage image = reader.read(0, param);
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = new int[width*height];
+		
+		if (image.getType() == BufferedImage.TYPE_3BYTE_BGR && image.getRaster().getDataBuffer() instanceof DataBufferByte
+				&& image.getRaster().getSampleModelTranslateX() == 0 && image.getRaster().getSampleModelTranslateY() == 0) {
+			/* The usual case of JPEG files: the bytes are read directly instead of converting each pixel through the color model.
+			 */
+			byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			if (bgr.length < 3*pixels.length) {
+				throw new IOException("Cannot decode " + name + ".");
+			}
+			for (int i=0, j=0;i<pixels.length;i++, j+=3) {
+				pixels[i] = 0xff000000 | ((bgr[j+2]&0xff)<<16) | ((bgr[j+1]&0xff)<<8) | (bgr[j]&0xff);
+			}
+		} else {
+			image.getRGB(0, 0, width, height, pixels, 0, width);
+		}
+		return new ColorProcessor(width, height, pixels);
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interface of the pools of threads that read pictures for the program reader: BatchReader runs each task in one thread,
+ * StagedReader runs the stages of the tasks in different threads.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public interface PictureReader {
+	
+	/** Submits a task. Blocks while the queue of pending tasks is full.
+	 * @param rp - task to run.
+	 * @return A future that is done when the task is finished.
+	 */
+	public Future<RunnableProcess> submit(RunnableProcess rp);
+	
+	/** Gets the next finished task, if any.
+	 * @return The task that finished first among the finished tasks not yet returned, or null if there is none.
+	 */
+	public RunnableProcess poll();
+	
+	/** Gets the next finished task, waiting for one if none is finished yet.
+	 * @return The task that finished first among the finished tasks not yet returned.
+	 * @throws InterruptedException
+	 */
+	public RunnableProcess take() throws InterruptedException;
+	
+	/** Stops accepting new tasks. Tasks already submitted are still run.
+	 */
+	public void shutdown();
+	
+	/** Waits until all submitted tasks are done after a call to shutdown().
+	 * @param timeout - maximal time to wait.
+	 * @param unit - unit of 'timeout'.
+	 * @return true if all tasks are done, false if the timeout elapsed before.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+}
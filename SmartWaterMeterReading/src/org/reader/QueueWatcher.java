@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches a folder with a WatchService and returns the pictures that arrive in it.
+ * A picture is returned once its size and its modification date have not changed for a given time and it ends with the end of
+ * image marker of JPEG files, so that files that are still being written (uploaded or copied) are not read before they are complete.
+ * A picture without the marker is returned only once it has not changed for a longer time, with a warning, so that it is read
+ * or moved to the failed pictures anyway (pictures with data after the marker, or truncated uploads that are never completed):
+ * an upload that stalls is completed in the meantime in most cases. Only files whose name ends with .jpg or .jpeg (in any case) are pictures, so that the
+ * temporary files of uploads (e.g. x.jpg.part) are ignored, as well as hidden files (starting with '.').
+ * A picture is returned only once, until forget() is called for it.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class QueueWatcher {
+	
+	private File dir;
+	private long settleNanos;
+	private long incompleteNanos;
+	private WatchService watchService;
+	private Map<String, Candidate> candidates = new HashMap<String, Candidate>();
+	private Set<String> returned = new HashSet<String>();
+	
+	
+	
+	/** Starts watching a folder. The pictures already in the folder are candidates too.
+	 * @param dir - folder to watch.
+	 * @param settleMillis - time in milliseconds during which the size of a file must not change before it is returned.
+	 * @param incompleteMillis - time in milliseconds during which the size of a file without end of image marker must not change
+	 * before it is returned.
+	 * @throws IOException if the folder cannot be watched.
+	 */
+	public QueueWatcher(File dir, long settleMillis, long incompleteMillis) throws IOException {
+		this.dir = dir;
+		this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+		this.incompleteNanos = TimeUnit.MILLISECONDS.toNanos(incompleteMillis);
+		watchService = FileSystems.getDefault().newWatchService();
+		dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		scan();
+	}
+	
+	
+	
+	/** Waits for changes in the folder and gets the pictures that are complete.
+	 * @param timeout - maximal time to wait for a change in the folder.
+	 * @param unit - unit of 'timeout'.
+	 * @return The pictures that did not change during the settle time and were not returned yet. May be empty.
+	 * @throws InterruptedException
+	 */
+	public List<File> poll(long timeout, TimeUnit unit) throws InterruptedException {
+		WatchKey key = candidates.isEmpty() ? watchService.poll(timeout, unit)
+				: watchService.poll(Math.min(unit.toNanos(timeout), settleNanos), TimeUnit.NANOSECONDS);
+		while (key != null) {
+			for (WatchEvent<?> event:key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					scan();
+				} else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+					String name = ((Path) event.context()).toString();
+					candidates.remove(name);
+					returned.remove(name);
+				} else {
+					add(((Path) event.context()).toString());
+				}
+			}
+			key.reset();
+			key = watchService.poll();
+		}
+		
+		List<File> res = new ArrayList<File>();
+		long now = System.nanoTime();
+		Iterator<Map.Entry<String, Candidate>> it = candidates.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Candidate> e = it.next();
+			File f = new File(dir, e.getKey());
+			Candidate c = e.getValue();
+			if (!f.isFile()) {
+				it.remove();
+			} else if (c.update(f, now)) {
+				it.remove();
+				returned.add(e.getKey());
+				res.add(f);
+			}
+		}
+		return res;
+	}
+	
+	
+	
+	/** Allows a picture to be returned again by poll(), once it has been read and moved away.
+	 * @param f - picture returned by poll().
+	 */
+	public void forget(File f) {
+		returned.remove(f.getName());
+	}
+	
+	
+	
+	/** Makes a picture returned by poll() a candidate again, so that it is returned again once it has not changed for the settle
+	 * time, e.g. when it could not be moved away after it was read.
+	 * @param f - picture returned by poll().
+	 */
+	public void retry(File f) {
+		returned.remove(f.getName());
+		add(f.getName());
+	}
+	
+	
+	
+	/** Stops watching the folder.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		watchService.close();
+	}
+	
+	
+	
+	private void scan() {
+		String[] names = dir.list();
+		if (names == null) return;
+		for (String name:names) {
+			add(name);
+		}
+	}
+	
+	
+	
+	/** Tests whether a file is a picture that the watcher returns.
+	 * @param name - name of the file.
+	 * @return true if the name ends with .jpg or .jpeg, in any case, and does not start with '.'.
+	 */
+	public static boolean isPicture(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		return !name.startsWith(".") && (lower.endsWith(".jpg") || lower.endsWith(".jpeg"));
+	}
+	
+	
+	
+	private void add(String name) {
+		if (!isPicture(name) || returned.contains(name) || candidates.containsKey(name)) return;
+		candidates.put(name, new Candidate());
+	}
+	
+	
+	
+	/* JPEG files end with the marker 0xFFD9. */
+	private static boolean endsWithEndOfImage(File f) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(f, "r");
+			try {
+				long n = raf.length();
+				if (n < 2) return false;
+				raf.seek(n - 2);
+				return raf.read() == 0xFF && raf.read() == 0xD9;
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	
+	
+	/**
+	 * State of a file when it was last checked.
+	 */
+	private class Candidate {
+		
+		private long size = -1;
+		private long lastModified;
+		private long since;
+		
+		/* Returns true if the file did not change for settleNanos and ends with the end of image marker, or did not change for
+		 * incompleteNanos. */
+		private boolean update(File f, long now) {
+			long s = f.length();
+			long m = f.lastModified();
+			if (s != size || m != lastModified) {
+				size = s;
+				lastModified = m;
+				since = now;
+				return false;
+			}
+			if (size <= 0 || now - since < settleNanos) return false;
+			if (endsWithEndOfImage(f)) return true;
+			if (now - since < incompleteNanos) return false;
+			System.out.println("Warning: " + f.getName() + " does not end with the end of image marker, read after "
+					+ TimeUnit.NANOSECONDS.toSeconds(now - since) + " s without change.");
+			return true;
+		}
+	}
+}
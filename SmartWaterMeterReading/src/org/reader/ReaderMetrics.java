@@ -0,0 +1,389 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class measures the steps of the reading of pictures: the duration of each stage in a LatencyHistogram, the number of
+ * successes and of failures of each stage by type of exception, and the bytes allocated by the threads reading the pictures
+ * (when the JVM supports it).
+ * 
+ * A task gets a Timer from timer() and calls begin() before each stage, end() when it succeeds and fail() when it throws. When
+ * measures are disabled (the default, unless the system property swmr.metrics is true), timer() returns a timer that does nothing,
+ * so that the cost of the measures is one volatile read per task.
+ * 
+ * The measures can be queried through JMX once register() has been called, and getSummary() gives them in one line.
+ * The queues given to watchQueue() can also be queried through JMX, whether the measures are enabled or not, to see where the
+ * pictures wait.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class ReaderMetrics implements ReaderMetricsMBean {
+	
+	/** Name under which the default instance is registered in the platform MBean server. */
+	public static final String OBJECT_NAME = "org.reader:type=ReaderMetrics";
+	
+	private static final ReaderMetrics defaultMetrics = new ReaderMetrics(Boolean.getBoolean("swmr.metrics"));
+	private static final Timer NO_TIMER = new Timer(null);
+	
+	private volatile boolean enabled;
+	private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final List<String> stages = new CopyOnWriteArrayList<String>();
+	private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong tasks = new AtomicLong();
+	private final AtomicLong failedTasks = new AtomicLong();
+	private final LatencyHistogram allocations = new LatencyHistogram();
+	private final Map<String, Collection<?>> queues = new LinkedHashMap<String, Collection<?>>();
+	private final com.sun.management.ThreadMXBean threads;
+	
+	
+	
+	/**
+	 * @param enabled - true to measure the tasks.
+	 */
+	public ReaderMetrics(boolean enabled) {
+		this.enabled = enabled;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+		} else {
+			threads = null;
+		}
+	}
+	
+	
+	
+	/**
+	 * @return The instance used by the program reader.
+	 */
+	public static ReaderMetrics getDefault() {
+		return defaultMetrics;
+	}
+	
+	
+	
+	/** Registers this instance in the platform MBean server under the name OBJECT_NAME.
+	 * @throws JMException if the registration fails.
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (!server.isRegistered(name)) {
+			server.registerMBean(this, name);
+		}
+	}
+	
+	
+	
+	/** Gets a timer to measure one task, in the thread running the task.
+	 * @return A new timer, or a timer that does nothing if the measures are disabled.
+	 */
+	public Timer timer() {
+		if (!enabled) return NO_TIMER;
+		return new Timer(this);
+	}
+	
+	
+	
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	
+	
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	
+	
+	@Override
+	public long getTasks() {
+		return tasks.get();
+	}
+	
+	
+	
+	@Override
+	public long getFailedTasks() {
+		return failedTasks.get();
+	}
+	
+	
+	
+	@Override
+	public long getAllocatedBytes() {
+		return allocations.getSum();
+	}
+	
+	
+	
+	@Override
+	public String[] getStages() {
+		return stages.toArray(new String[0]);
+	}
+	
+	
+	
+	/**
+	 * @param stage - name of a stage.
+	 * @return The durations of the stage in nanoseconds, or null if the stage was never measured.
+	 */
+	public LatencyHistogram getLatencies(String stage) {
+		return latencies.get(stage);
+	}
+	
+	
+	
+	@Override
+	public double getMeanMillis(String stage) {
+		LatencyHistogram h = latencies.get(stage);
+		return h == null ? 0 : h.getMean()/1E6;
+	}
+	
+	
+	
+	@Override
+	public double getPercentileMillis(String stage, double percentile) {
+		LatencyHistogram h = latencies.get(stage);
+		return h == null ? 0 : h.getPercentile(percentile)/1E6;
+	}
+	
+	
+	
+	@Override
+	public long getFailures(String stage) {
+		long n = 0;
+		for (Map.Entry<String, AtomicLong> e:failures.entrySet()) {
+			if (e.getKey().startsWith(stage + "/")) n += e.getValue().get();
+		}
+		return n;
+	}
+	
+	
+	
+	@Override
+	public String[] getFailureCounts() {
+		List<String> res = new ArrayList<String>();
+		for (Map.Entry<String, AtomicLong> e:failures.entrySet()) {
+			res.add(e.getKey() + "=" + e.getValue().get());
+		}
+		return res.toArray(new String[0]);
+	}
+	
+	
+	
+	/** Makes the size of a queue available through getQueueDepths().
+	 * @param name - name of the queue, which replaces a queue watched with the same name.
+	 * @param queue - queue to watch. It must be thread-safe.
+	 */
+	public void watchQueue(String name, Collection<?> queue) {
+		synchronized (queues) {
+			queues.put(name, queue);
+		}
+	}
+	
+	
+	
+	@Override
+	public String[] getQueueDepths() {
+		List<String> res = new ArrayList<String>();
+		synchronized (queues) {
+			for (Map.Entry<String, Collection<?>> e:queues.entrySet()) {
+				res.add(e.getKey() + "=" + e.getValue().size());
+			}
+		}
+		return res.toArray(new String[0]);
+	}
+	
+	
+	
+	@Override
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("tasks=").append(tasks.get()).append(" failed=").append(failedTasks.get());
+		if (threads != null) {
+			sb.append(String.format(Locale.ROOT, " alloc/task=%.1fMB", allocations.getMean()/(1 << 20)));
+		}
+		for (String stage:stages) {
+			LatencyHistogram h = latencies.get(stage);
+			sb.append(String.format(Locale.ROOT, " | %s n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", stage, h.getCount(),
+					h.getMean()/1E6, h.getPercentile(50)/1E6, h.getPercentile(99)/1E6, h.getMax()/1E6));
+		}
+		if (!failures.isEmpty()) {
+			sb.append(" | failures:");
+			for (String f:getFailureCounts()) {
+				sb.append(" ").append(f);
+			}
+		}
+		return sb.toString();
+	}
+	
+	
+	
+	@Override
+	public void reset() {
+		latencies.clear();
+		stages.clear();
+		failures.clear();
+		tasks.set(0);
+		failedTasks.set(0);
+		allocations.reset();
+	}
+	
+	
+	
+	private LatencyHistogram latencies(String stage) {
+		LatencyHistogram h = latencies.get(stage);
+		if (h == null) {
+			LatencyHistogram h2 = new LatencyHistogram();
+			h = latencies.putIfAbsent(stage, h2);
+			if (h == null) {
+				h = h2;
+				stages.add(stage);
+			}
+		}
+		return h;
+	}
+	
+	
+	
+	private void failure(String stage, Throwable t) {
+		String key = stage + "/" + t.getClass().getSimpleName();
+		AtomicLong n = failures.get(key);
+		if (n == null) {
+			AtomicLong n2 = new AtomicLong();
+			n = failures.putIfAbsent(key, n2);
+			if (n == null) n = n2;
+		}
+		n.incrementAndGet();
+	}
+	
+	
+	
+	private long allocatedBytes() {
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	
+	
+	/**
+	 * Measures the stages of one task. A timer must be used by one thread at a time: when the stages of a task are run by
+	 * different threads, the thread that ran a stage calls pause() before handing the task over, so that the time spent waiting
+	 * for the next thread is not counted and the bytes allocated are those of the threads running the task.
+	 */
+	public static class Timer {
+		
+		private final ReaderMetrics metrics;
+		private String stage;
+		private long start;
+		private Thread thread;
+		private long startBytes;
+		private long bytes;
+		
+		private Timer(ReaderMetrics metrics) {
+			this.metrics = metrics;
+			if (metrics != null) {
+				thread = Thread.currentThread();
+				startBytes = metrics.allocatedBytes();
+			}
+		}
+		
+		/** Ends the current stage, if any, and starts a new one.
+		 * @param stage - name of the new stage.
+		 */
+		public void begin(String stage) {
+			if (metrics == null) return;
+			long now = System.nanoTime();
+			if (this.stage != null) {
+				metrics.latencies(this.stage).record(now - start);
+			}
+			if (thread != Thread.currentThread()) {
+				thread = Thread.currentThread();
+				startBytes = metrics.allocatedBytes();
+			}
+			this.stage = stage;
+			start = now;
+		}
+		
+		/** Ends the current stage, if any, before the task is handed over to another thread, which calls begin() to start the
+		 * next stage.
+		 */
+		public void pause() {
+			if (metrics == null) return;
+			if (stage != null) {
+				metrics.latencies(stage).record(System.nanoTime() - start);
+				stage = null;
+			}
+			if (thread != null) {
+				bytes += metrics.allocatedBytes() - startBytes;
+				thread = null;
+			}
+		}
+		
+		/** Ends the current stage and the task, which succeeded.
+		 */
+		public void end() {
+			if (metrics == null) return;
+			begin(null);
+			endTask();
+		}
+		
+		/** Ends the task, which failed in the current stage.
+		 * @param t - exception thrown by the current stage.
+		 */
+		public void fail(Throwable t) {
+			if (metrics == null) return;
+			metrics.failure(stage == null ? "task" : stage, t);
+			metrics.failedTasks.incrementAndGet();
+			stage = null;
+			endTask();
+		}
+		
+		private void endTask() {
+			metrics.tasks.incrementAndGet();
+			if (metrics.threads != null) {
+				if (thread == Thread.currentThread()) {
+					bytes += metrics.allocatedBytes() - startBytes;
+				}
+				metrics.allocations.record(bytes);
+			}
+			thread = null;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+/**
+ * Management interface of ReaderMetrics, to query the measures of the program reader through JMX.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public interface ReaderMetricsMBean {
+	
+	public boolean isEnabled();
+	
+	public void setEnabled(boolean enabled);
+	
+	/**
+	 * @return The number of tasks measured.
+	 */
+	public long getTasks();
+	
+	/**
+	 * @return The number of measured tasks that failed.
+	 */
+	public long getFailedTasks();
+	
+	/**
+	 * @return The number of bytes allocated by the measured tasks, or 0 if the JVM cannot measure it.
+	 */
+	public long getAllocatedBytes();
+	
+	/**
+	 * @return The names of the stages measured so far, in the order they were first measured.
+	 */
+	public String[] getStages();
+	
+	/**
+	 * @param stage - name of a stage.
+	 * @return The mean duration of the stage in milliseconds.
+	 */
+	public double getMeanMillis(String stage);
+	
+	/**
+	 * @param stage - name of a stage.
+	 * @param percentile - percentile between 0 and 100.
+	 * @return The percentile of the durations of the stage in milliseconds.
+	 */
+	public double getPercentileMillis(String stage, double percentile);
+	
+	/**
+	 * @param stage - name of a stage.
+	 * @return The number of times the stage failed.
+	 */
+	public long getFailures(String stage);
+	
+	/**
+	 * @return The number of failures per stage and exception type.
+	 */
+	public String[] getFailureCounts();
+	
+	/**
+	 * @return The number of elements of each queue watched (see ReaderMetrics.watchQueue), as name=depth.
+	 */
+	public String[] getQueueDepths();
+	
+	/**
+	 * @return A line summarizing all the measures.
+	 */
+	public String getSummary();
+	
+	/** Forgets all the measures.
+	 */
+	public void reset();
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class moves the pictures read by RunnableProcess tasks out of the queue: a picture whose index was read is renamed with
+ * the index and moved to the folder of results, a picture that could not be read is moved with its name to the folder of failures.
+ * 
+ * Names never collide: if a file with the same name already exists, a number is added to the name (index_1.jpg, index_2.jpg, ...).
+ * The name is reserved by creating an empty file, which is then atomically replaced by the picture, so that a picture is never
+ * overwritten, even by another program publishing in the same folder, and never appears partially written.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class ResultPublisher {
+	
+	private File resDir;
+	private File failedDir;
+	
+	
+	
+	/**
+	 * @param resDir - folder of the pictures whose index was read.
+	 * @param failedDir - folder of the pictures that could not be read. Created if needed.
+	 */
+	public ResultPublisher(File resDir, File failedDir) {
+		this.resDir = resDir;
+		this.failedDir = failedDir;
+	}
+	
+	
+	
+	/** Moves the picture of a finished task.
+	 * @param rp - finished task.
+	 * @return The new location of the picture.
+	 * @throws IOException if the picture cannot be moved. It then stays in the queue.
+	 */
+	public File publish(RunnableProcess rp) throws IOException {
+		Path src = new File(rp.getPath()).toPath();
+		if (rp.isSuccessful()) {
+			return move(src, resDir, Integer.toString(rp.getIndex()), ".jpg");
+		}
+		
+		String name = src.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if (dot <= 0) {
+			return move(src, failedDir, name, "");
+		}
+		return move(src, failedDir, name.substring(0, dot), name.substring(dot));
+	}
+	
+	
+	
+	/* Moves a file to the first free name among base+ext, base_1+ext, base_2+ext...
+	 */
+	private static File move(Path src, File dir, String base, String ext) throws IOException {
+		Files.createDirectories(dir.toPath());
+		for (int n=0;;n++) {
+			Path dst = dir.toPath().resolve(n == 0 ? base + ext : base + "_" + n + ext);
+			try {
+				Files.createFile(dst);
+			} catch (FileAlreadyExistsException e) {
+				continue;
+			}
+			
+			try {
+				try {
+					Files.move(src, dst, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				Files.deleteIfExists(dst);
+				throw e;
+			}
+			return dst.toFile();
+		}
+	}
+}
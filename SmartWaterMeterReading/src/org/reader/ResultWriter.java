@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+import org.recognizer.DigitScores;
+
+/**
+ * This class appends one line per finished RunnableProcess task to a file of results, so that the readings can be loaded in
+ * another program without listing the folder of results.
+ * 
+ * The format depends on the extension of the file: a file ending with .jsonl or .json gets one JSON object per line, any
+ * other file gets comma-separated values, with a header line when the file is created. A line contains the time the task was
+ * published (milliseconds since 1970), the name of the source picture, the file it was moved to, the meter type, the status
+ * (ok or failed), the index, the distance of each digit to its template in the SOM network and to the nearest other template
+ * (see DigitScores), the time the task waited in the queue and the time it took to read the picture (in milliseconds) and the
+ * error if the reading failed. In CSV files, the distances are separated by ';'.
+ * 
+ * Lines are written to a buffer and written to the file by batches: when 'batchSize' lines are buffered, when the oldest
+ * buffered line is older than 'maxDelayMillis' or when flush() or close() is called.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class ResultWriter {
+	
+	private static final String[] COLUMNS = {"time", "source", "destination", "meterType", "status", "index", "distances",
+		"runnerUpDistances", "waitingMs", "latencyMs", "error"};
+	
+	private BufferedWriter out;
+	private boolean json;
+	private int batchSize;
+	private long maxDelayMillis;
+	private int buffered = 0;
+	private long oldest;
+	
+	
+	
+	/**
+	 * Creates a writer that writes by batches of 100 lines or at least once per second.
+	 * @param file - file of results. Lines are added at its end if it exists.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public ResultWriter(File file) throws IOException {
+		this(file, 100, 1000);
+	}
+	
+	
+	
+	/**
+	 * @param file - file of results. Lines are added at its end if it exists.
+	 * @param batchSize - maximal number of lines kept in the buffer.
+	 * @param maxDelayMillis - maximal time in milliseconds a line is kept in the buffer, as long as new lines are written.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public ResultWriter(File file, int batchSize, long maxDelayMillis) throws IOException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize should be positive.");
+		}
+		this.batchSize = batchSize;
+		this.maxDelayMillis = maxDelayMillis;
+		String name = file.getName().toLowerCase();
+		json = name.endsWith(".jsonl") || name.endsWith(".json");
+		
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null) dir.mkdirs();
+		boolean empty = file.length() == 0;
+		out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charset.forName("UTF-8")), 1 << 16);
+		if (empty && !json) {
+			for (int i=0;i<COLUMNS.length;i++) {
+				if (i > 0) out.write(',');
+				out.write(COLUMNS[i]);
+			}
+			out.newLine();
+		}
+	}
+	
+	
+	
+	/** Writes the result of a finished task.
+	 * @param rp - finished task.
+	 * @param destination - file the picture was moved to, or null if it was not moved.
+	 * @throws IOException if a batch cannot be written.
+	 */
+	public synchronized void write(RunnableProcess rp, File destination) throws IOException {
+		long now = System.currentTimeMillis();
+		String[] values = {
+				Long.toString(now),
+				new File(rp.getPath()).getName(),
+				destination == null ? null : destination.getPath(),
+				rp.getMeterType(),
+				rp.isSuccessful() ? "ok" : "failed",
+				rp.isSuccessful() ? Integer.toString(rp.getIndex()) : null,
+				null,
+				null,
+				Long.toString(Math.round(rp.getWaitingTime())),
+				Long.toString(Math.round(rp.getLatency())),
+				rp.getFailure() == null ? null : rp.getFailure().toString()};
+		
+		StringBuilder line = new StringBuilder(256);
+		if (json) line.append('{');
+		for (int i=0;i<COLUMNS.length;i++) {
+			if (i > 0) line.append(',');
+			if (json) line.append('"').append(COLUMNS[i]).append("\":");
+			if (i == 6 || i == 7) {
+				DigitScores scores = rp.getScores();
+				appendDistances(line, scores == null ? null : i == 6 ? scores.getDistances() : scores.getRunnerUpDistances());
+			} else if (json) {
+				appendJson(line, values[i], i == 0 || i == 5 || i == 8 || i == 9);
+			} else if (values[i] != null) {
+				appendCsv(line, values[i]);
+			}
+		}
+		if (json) line.append('}');
+		
+		out.write(line.toString());
+		out.newLine();
+		if (buffered++ == 0) oldest = now;
+		if (buffered >= batchSize || now - oldest >= maxDelayMillis) {
+			flush();
+		}
+	}
+	
+	
+	
+	/** Writes the buffered lines to the file.
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (buffered == 0) return;
+		out.flush();
+		buffered = 0;
+	}
+	
+	
+	
+	/** Writes the buffered lines and closes the file.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		out.close();
+		buffered = 0;
+	}
+	
+	
+	
+	private void appendDistances(StringBuilder line, double[] distances) {
+		if (distances == null) {
+			if (json) line.append("null");
+			return;
+		}
+		line.append(json ? '[' : '"');
+		for (int i=0;i<distances.length;i++) {
+			if (i > 0) line.append(json ? ',' : ';');
+			line.append(distances[i]);
+		}
+		line.append(json ? ']' : '"');
+	}
+	
+	
+	
+	private static void appendJson(StringBuilder line, String value, boolean number) {
+		if (value == null) {
+			line.append("null");
+			return;
+		}
+		if (number) {
+			line.append(value);
+			return;
+		}
+		line.append('"');
+		for (int i=0;i<value.length();i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': line.append("\\\""); break;
+			case '\\': line.append("\\\\"); break;
+			case '\n': line.append("\\n"); break;
+			case '\r': line.append("\\r"); break;
+			case '\t': line.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					line.append(String.format("\\u%04x", (int) c));
+				} else {
+					line.append(c);
+				}
+			}
+		}
+		line.append('"');
+	}
+	
+	
+	
+	private static void appendCsv(StringBuilder line, String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			line.append(value);
+			return;
+		}
+		line.append('"').append(value.replace("\"", "\"\"")).append('"');
+	}
+}
@@ -23,43 +23,127 @@
  */
 package org.reader;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.awt.Rectangle;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
-import org.encog.ml.data.MLDataSet;
-import org.recognizer.Recognizer;
+import org.recognizer.Dial;
+import org.recognizer.DigitScores;
+import org.recognizer.HandAssignment;
+import org.recognizer.MeterReader;
+import org.recognizer.Reading;
 import org.recognizer.TypeSpec;
+import org.recognizer.TypeSpecRegistry;
 
 import ij.ImagePlus;
-import ij.ImageStack;
-import ij.measure.ResultsTable;
+import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 
 /**
- * This class contains a thread that creates a Recognizer from a picture and a meter type and calls methods on the Recognizer that correspond to steps of image processing to get the index of the meter on the picture.
+ * This class contains a task that opens a picture, gets its meter type and reads the index of the meter on the picture with a MeterReader.
+ * The picture is only decoded when the task is run by a worker of the BatchReader, so that pending tasks do not hold any image in memory.
+ * The task also measures the time it waited in the queue and the time it took to read the picture, and reports the duration of
+ * each step and the step that failed, if any, to ReaderMetrics.
+ * The picture is read by a MeterReader shared by all the tasks, one stage after the other. The intermediate images and the images
+ * of the digits are kept in the ScratchBuffers of the worker thread, so that a worker reading pictures of the same size
+ * allocates almost nothing per picture besides the decoded picture and its dial.
  * 
  * @author pauline ruegg-reymond
  *
  */
-public class RunnableProcess extends Thread {
+public class RunnableProcess implements Runnable {
 
-	private ImagePlus im;
+	private static final MeterReader READER = new MeterReader();
+
+	private String path;
 	private String meterType;
+	private int coarseFactor = 4;
+	private boolean regionDecoding;
 	private int index;
+	private DigitScores scores;
+	private Exception failure;
+	private long created;
+	private long started;
+	private long finished;
+	
+	private ReaderMetrics.Timer timer;
+	private byte[] data;
+	private TypeSpec type;
+	private ImageProcessor picture;
+	private HandAssignment hands;
+	private Dial dial;
+	private Rectangle region;
+	private int width;
+	private int height;
 	
 
 
-	public RunnableProcess(ImagePlus im, String meterType) {
+	/**
+	 * @param path - path of the picture to read.
+	 * @param meterType - type of the meter on the picture.
+	 */
+	public RunnableProcess(String path, String meterType) {
 		super();
-		this.im = im;
+		this.path = path;
 		this.meterType = meterType;
+		this.created = System.nanoTime();
 	}
 	
 	
 	
+	public String getPath() {
+		return path;
+	}
+
+
+
+	public String getMeterType() {
+		return meterType;
+	}
+
+
+
+	/**
+	 * @return The reduction factor used to locate the red hands before searching them at full resolution.
+	 */
+	public int getCoarseFactor() {
+		return coarseFactor;
+	}
+
+
+
+	/**
+	 * @param coarseFactor - reduction factor used to locate the red hands before searching them at full resolution (see
+	 * Recognizer.locateRed). 1 searches the whole picture at full resolution.
+	 */
+	public void setCoarseFactor(int coarseFactor) {
+		this.coarseFactor = coarseFactor;
+	}
+
+
+
+	/**
+	 * @return true if only a region of the picture is decoded at full resolution.
+	 */
+	public boolean isRegionDecoding() {
+		return regionDecoding;
+	}
+
+
+
+	/**
+	 * @param regionDecoding - true to decode a preview of the picture reduced by the coarse factor, then only the region of the
+	 * hands and the dial at full resolution (see PictureDecoder and MeterReader.getRegionOfInterest), false to decode the whole
+	 * picture with ImagePlus.
+	 */
+	public void setRegionDecoding(boolean regionDecoding) {
+		this.regionDecoding = regionDecoding;
+	}
+
+
+
 	public int getIndex() {
 		return index;
 	}
@@ -72,41 +156,280 @@ public class RunnableProcess extends Thread {
 
 
 
+	/**
+	 * @return The digits read with their distances to the templates of the meter type (see Recognizer.getScores), in the order
+	 * of the digits on the picture, or null if the digits were not read.
+	 */
+	public DigitScores getScores() {
+		return scores;
+	}
+
+
+
+	/**
+	 * @return true if the task is finished and the index was read.
+	 */
+	public boolean isSuccessful() {
+		return finished != 0 && failure == null;
+	}
+
+
+
+	/**
+	 * @return The exception that made the reading fail, or null if the reading did not fail.
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+
+
+	/**
+	 * @return The time in milliseconds between the creation of the task and the moment a worker started it.
+	 */
+	public double getWaitingTime() {
+		return (started - created)/1E6;
+	}
+
+
+
+	/**
+	 * @return The time in milliseconds the worker took to read the picture.
+	 */
+	public double getLatency() {
+		return (finished - started)/1E6;
+	}
+
+
+
 	@Override
 	public void run() {
+		MeterReader reader = getReader();
+		start();
 		try {
-			Recognizer r = new Recognizer();
-			FileInputStream fis = new FileInputStream("res/" + meterType);
-			ObjectInputStream ois = new ObjectInputStream(fis);
-			
-			TypeSpec type = (TypeSpec) ois.readObject();
-			ois.close();
-
-			ImageProcessor ip = im.getProcessor();
-			ImageProcessor ip_red = r.findRed(ip);
-			ResultsTable blobs =  r.findBlob(ip_red, 60);
-			blobs =  r.treatBlobs(ip_red,  blobs);
-			ImageProcessor ip_dial =  r.getDial(ip, blobs, type);
-			ip_dial =  r.binarize(ip_dial);
-			blobs =  r.findBlob(ip_dial,  40);
-			List<int[]> order = r.preferredOrder(blobs);
-			ImageStack chars = r.getCharacters(ip_dial, blobs, type, order);
-			
-			MLDataSet charsDataSet =  r.imageStack2MLDataSet(chars);
-			
-			
-			int[] numbers = r.getNumbers(charsDataSet, type, order);
-			int index = r.digits2int(numbers, order, blobs);
-			this.setIndex(index);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+			decode(reader);
+			findHands(reader);
+			getDial(reader);
+			readDigits(reader);
 		} catch (Exception e) {
-			e.printStackTrace();
+			fail(e);
+		}
+	}
+	
+	
+	
+	/* The methods below run the stages of run() one by one, for StagedReader. Each stage may be run by a different thread, but
+	 * only one thread at a time uses the task: pause() is called before the task is handed over to the next stage.
+	 */
+	
+	
+	
+	/** Starts the task: the time it waited in the queue ends here.
+	 */
+	void start() {
+		started = System.nanoTime();
+		if (timer == null) {
+			timer = ReaderMetrics.getDefault().timer();
+		}
+	}
+	
+	
+	
+	/** Reads the content of the file of the picture, which is then decoded from memory (see AsyncIoReader). Called by an I/O
+	 * thread before the task is submitted.
+	 * @throws IOException if the file cannot be read. The task can still be run: it then reads the file itself.
+	 */
+	void load() throws IOException {
+		timer = ReaderMetrics.getDefault().timer();
+		timer.begin("load");
+		try {
+			data = Files.readAllBytes(Paths.get(path));
+		} finally {
+			timer.pause();
 		}
 	}
+	
+	
+	
+	/** Gets the meter type and decodes the picture, or the region of the picture that contains the hands and the dial.
+	 * @throws IOException if the picture cannot be decoded.
+	 * @throws ClassNotFoundException if the meter type cannot be read.
+	 */
+	void decode(MeterReader reader) throws IOException, ClassNotFoundException {
+		timer.begin("type");
+		type = TypeSpecRegistry.getDefault().get(meterType);
+		
+		if (regionDecoding) {
+			decodeRegion(reader);
+			return;
+		}
+		timer.begin("decode");
+		if (data != null) {
+			PictureDecoder decoder = openDecoder();
+			try {
+				picture = decoder.decode();
+			} finally {
+				decoder.close();
+			}
+			data = null;
+			return;
+		}
+		ImagePlus im = new ImagePlus(path);
+		picture = im.getProcessor();
+		if (picture == null) {
+			throw new IOException("Cannot decode " + path + ".");
+		}
+	}
+	
+	
+	
+	void findHands(MeterReader reader) {
+		timer.begin("findHands");
+		hands = reader.findHands(picture);
+	}
+	
+	
+	
+	/** Extracts the dial, after which the picture is no longer needed.
+	 */
+	void getDial(MeterReader reader) throws IOException {
+		timer.begin("getDial");
+		if (region != null) {
+			/* The region was predicted from the preview: if it misses a part of the dial, the dial is decoded again by itself.
+			 */
+			Rectangle bounds = reader.getDialBounds(hands, type);
+			bounds.translate(region.x, region.y);
+			bounds = bounds.intersection(new Rectangle(0, 0, width, height));
+			if (!bounds.isEmpty() && !region.contains(bounds)) {
+				timer.begin("decodeDial");
+				PictureDecoder decoder = openDecoder();
+				try {
+					picture = decoder.decodeRegion(bounds);
+				} finally {
+					decoder.close();
+				}
+				hands = hands.map(1, region.x - bounds.x, region.y - bounds.y);
+				region = bounds;
+				timer.begin("getDial");
+			}
+		}
+		dial = reader.getDial(picture, hands, type);
+		picture = null;
+		data = null;
+	}
+	
+	
+	
+	/* Decodes a preview of the picture, then the region of the hands and the dial predicted from the preview.
+	 */
+	private void decodeRegion(MeterReader reader) throws IOException {
+		timer.begin("decodePreview");
+		PictureDecoder decoder = openDecoder();
+		try {
+			width = decoder.getWidth();
+			height = decoder.getHeight();
+			int factor = reader.getCoarseFactor();
+			Rectangle roi = null;
+			if (factor > 1) {
+				ColorProcessor preview = decoder.decodePreview(factor);
+				roi = reader.getRegionOfInterest(preview, width, height, type);
+			}
+			
+			timer.begin("decodeRegion");
+			if (roi == null) {
+				region = new Rectangle(0, 0, width, height);
+				picture = decoder.decode();
+			} else {
+				region = roi;
+				picture = decoder.decodeRegion(roi);
+			}
+		} finally {
+			decoder.close();
+		}
+	}
+	
+	
+	
+	private PictureDecoder openDecoder() throws IOException {
+		return data == null ? new PictureDecoder(new File(path)) : new PictureDecoder(data, path);
+	}
+	
+	
+	
+	void readDigits(MeterReader reader) {
+		timer.begin("readDigits");
+		succeed(reader.readDigits(dial, type));
+	}
+	
+	
+	
+	/** Starts the stage readDigits of a task whose digits are read with those of other tasks (see MeterReader.readDigits(Dial[],
+	 * TypeSpec, RuntimeException[])). The stage ends with succeed() or fail().
+	 */
+	void beginReadDigits() {
+		timer.begin("readDigits");
+	}
+	
+	
+	
+	/** Ends the task with the digits read.
+	 */
+	void succeed(Reading reading) {
+		scores = reading.getScores();
+		this.setIndex(reading.getIndex());
+		timer.end();
+		finish();
+	}
+	
+	
+	
+	/** Ends the task, which failed in the current stage. The failure is counted by ReaderMetrics and reported by the
+	 * program that publishes the task (see getFailure()).
+	 */
+	void fail(Exception e) {
+		failure = e;
+		timer.fail(e);
+		finish();
+	}
+	
+	
+	
+	/** Ends the current stage before the task is handed over to another thread.
+	 */
+	void pause() {
+		timer.pause();
+	}
+	
+	
+	
+	/**
+	 * @return The reader shared by all the tasks, or a reader for this task if its coarse factor is not the default one.
+	 */
+	MeterReader getReader() {
+		return coarseFactor == READER.getCoarseFactor() ? READER : new MeterReader(coarseFactor, true);
+	}
+	
+	
+	
+	TypeSpec getType() {
+		return type;
+	}
+	
+	
+	
+	Dial getDial() {
+		return dial;
+	}
+	
+	
+	
+	private void finish() {
+		data = null;
+		picture = null;
+		region = null;
+		hands = null;
+		dial = null;
+		finished = System.nanoTime();
+	}
 
 }
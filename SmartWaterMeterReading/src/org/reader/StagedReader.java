@@ -0,0 +1,410 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.reader;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.recognizer.Dial;
+import org.recognizer.MeterReader;
+import org.recognizer.Reading;
+import org.recognizer.TypeSpec;
+
+/**
+ * This class reads pictures in four stages, each run by its own threads: decode (meter type and picture), localise (red hands),
+ * extract (binary dial) and classify (digits and index). Stages are linked by bounded queues, so that decoding the next
+ * pictures overlaps with the processing of the previous ones, and a stage that is slower than the others makes the previous
+ * stages wait instead of filling the memory with pictures. The classify stage takes up to batchSize dials from its queue at
+ * once and classifies their digits together (see MeterReader.readDigits(Dial[], TypeSpec, RuntimeException[])).
+ * 
+ * The number of threads of each stage is chosen when the reader is created. The depth of the queues can be read with
+ * getQueueDepth() or through JMX (see ReaderMetrics.getQueueDepths), to find the stage that needs more threads.
+ * 
+ * The tasks give the same results as with a BatchReader. The duration of the stage readDigits measured by ReaderMetrics is
+ * the time taken by the whole batch of the task.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class StagedReader implements PictureReader {
+	
+	/** Names of the stages, in the order they are run. */
+	public static final String[] STAGES = {"decode", "localise", "extract", "classify"};
+	
+	public static final int DECODE = 0;
+	public static final int LOCALISE = 1;
+	public static final int EXTRACT = 2;
+	public static final int CLASSIFY = 3;
+	
+	private static final Runnable NOTHING = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+	
+	/** Marks the end of the tasks in the queue of a stage. */
+	private static final Job END = new Job(null);
+	
+	private final List<BlockingQueue<Job>> queues = new ArrayList<BlockingQueue<Job>>();
+	private final BlockingQueue<Job> finished = new LinkedBlockingQueue<Job>();
+	private final int[] threads;
+	private final AtomicInteger[] running;
+	private final int batchSize;
+	private final MeterReader classifier = new MeterReader();
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	private boolean shutdown;
+	
+	
+	
+	/**
+	 * Creates a reader with half as many threads as processors for each of the first three stages, one thread to classify
+	 * the digits by batches of 8 dials, and queues of two tasks per processor.
+	 */
+	public StagedReader() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors()/2), Math.max(1, Runtime.getRuntime().availableProcessors()/2),
+				Math.max(1, Runtime.getRuntime().availableProcessors()/2), 1, 2*Runtime.getRuntime().availableProcessors(), 8);
+	}
+	
+	
+	
+	/**
+	 * @param decodeThreads - number of threads decoding the pictures.
+	 * @param localiseThreads - number of threads searching the red hands.
+	 * @param extractThreads - number of threads extracting the dials.
+	 * @param classifyThreads - number of threads reading the digits.
+	 * @param queueCapacity - maximal number of tasks waiting for each stage.
+	 * @param batchSize - maximal number of dials whose digits are classified together.
+	 */
+	public StagedReader(int decodeThreads, int localiseThreads, int extractThreads, int classifyThreads, int queueCapacity, int batchSize) {
+		threads = new int[] {decodeThreads, localiseThreads, extractThreads, classifyThreads};
+		for (int n:threads) {
+			if (n < 1) {
+				throw new IllegalArgumentException("The number of threads of each stage should be positive.");
+			}
+		}
+		if (queueCapacity < 1 || batchSize < 1) {
+			throw new IllegalArgumentException("queueCapacity and batchSize should be positive.");
+		}
+		this.batchSize = batchSize;
+		
+		running = new AtomicInteger[STAGES.length];
+		for (int s=0;s<STAGES.length;s++) {
+			BlockingQueue<Job> queue = new ArrayBlockingQueue<Job>(Math.max(queueCapacity, threads[s]));
+			queues.add(queue);
+			ReaderMetrics.getDefault().watchQueue(STAGES[s], queue);
+			running[s] = new AtomicInteger(threads[s]);
+		}
+		ReaderMetrics.getDefault().watchQueue("finished", finished);
+		
+		for (int s=0;s<STAGES.length;s++) {
+			for (int i=1;i<=threads[s];i++) {
+				new Thread(new Worker(s), STAGES[s] + "-" + i).start();
+			}
+		}
+	}
+	
+	
+	
+	/** Submits a task to the first stage. Blocks while the queue of the stage decode is full.
+	 * @param rp - task to run.
+	 * @return A future that is done when the task is finished.
+	 */
+	@Override
+	public synchronized Future<RunnableProcess> submit(RunnableProcess rp) {
+		if (shutdown) {
+			throw new RejectedExecutionException("The reader has been shut down.");
+		}
+		Job job = new Job(rp);
+		try {
+			queues.get(DECODE).put(job);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException(e);
+		}
+		return job.future;
+	}
+	
+	
+	
+	@Override
+	public RunnableProcess poll() {
+		Job job = finished.poll();
+		return job == null ? null : job.task;
+	}
+	
+	
+	
+	@Override
+	public RunnableProcess take() throws InterruptedException {
+		return finished.take().task;
+	}
+	
+	
+	
+	@Override
+	public synchronized void shutdown() {
+		if (shutdown) return;
+		shutdown = true;
+		end(DECODE);
+	}
+	
+	
+	
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+	
+	
+	
+	/**
+	 * @param stage - index of a stage (DECODE, LOCALISE, EXTRACT or CLASSIFY).
+	 * @return The number of tasks waiting for the stage.
+	 */
+	public int getQueueDepth(int stage) {
+		return queues.get(stage).size();
+	}
+	
+	
+	
+	/**
+	 * @param stage - index of a stage (DECODE, LOCALISE, EXTRACT or CLASSIFY).
+	 * @return The number of threads of the stage.
+	 */
+	public int getThreads(int stage) {
+		return threads[stage];
+	}
+	
+	
+	
+	/* Runs a stage other than classify on the tasks of its queue until the end of the tasks.
+	 */
+	private void process(int stage) throws InterruptedException {
+		BlockingQueue<Job> queue = queues.get(stage);
+		while (true) {
+			Job job = queue.take();
+			if (job == END) return;
+			
+			RunnableProcess rp = job.task;
+			try {
+				switch (stage) {
+				case DECODE:
+					rp.start();
+					rp.decode(job.reader);
+					break;
+				case LOCALISE:
+					rp.findHands(job.reader);
+					break;
+				case EXTRACT:
+					rp.getDial(job.reader);
+					break;
+				}
+			} catch (Exception e) {
+				rp.fail(e);
+				finish(job);
+				continue;
+			}
+			rp.pause();
+			try {
+				queues.get(stage+1).put(job);
+			} catch (InterruptedException e) {
+				rp.fail(e);
+				finish(job);
+				throw e;
+			}
+		}
+	}
+	
+	
+	
+	/* Runs the stage classify on batches of tasks until the end of the tasks.
+	 */
+	private void classify() throws InterruptedException {
+		BlockingQueue<Job> queue = queues.get(CLASSIFY);
+		List<Job> batch = new ArrayList<Job>(batchSize);
+		while (true) {
+			batch.clear();
+			batch.add(queue.take());
+			queue.drainTo(batch, batchSize-1);
+			
+			/* The ends are queued after the last task: the other threads of the stage need them too.
+			 */
+			int ends = 0;
+			for (Iterator<Job> it=batch.iterator();it.hasNext();) {
+				if (it.next() == END) {
+					it.remove();
+					ends++;
+				}
+			}
+			
+			while (!batch.isEmpty()) {
+				classify(batch);
+			}
+			if (ends > 0) {
+				for (int i=1;i<ends;i++) {
+					queue.put(END);
+				}
+				return;
+			}
+		}
+	}
+	
+	
+	
+	/* Reads the digits of the first task of the batch and of the other tasks of the same meter type, and removes them from
+	 * the batch.
+	 */
+	private void classify(List<Job> batch) {
+		TypeSpec type = batch.get(0).task.getType();
+		List<Job> group = new ArrayList<Job>(batch.size());
+		for (Iterator<Job> it=batch.iterator();it.hasNext();) {
+			Job job = it.next();
+			if (job.task.getType() == type) {
+				group.add(job);
+				it.remove();
+			}
+		}
+		
+		int n = group.size();
+		Dial[] dials = new Dial[n];
+		for (int i=0;i<n;i++) {
+			group.get(i).task.beginReadDigits();
+			dials[i] = group.get(i).task.getDial();
+		}
+		RuntimeException[] failures = new RuntimeException[n];
+		Reading[] readings;
+		try {
+			readings = classifier.readDigits(dials, type, failures);
+		} catch (RuntimeException e) {
+			readings = new Reading[n];
+			for (int i=0;i<n;i++) {
+				failures[i] = e;
+			}
+		}
+		
+		for (int i=0;i<n;i++) {
+			Job job = group.get(i);
+			if (readings[i] != null) {
+				job.task.succeed(readings[i]);
+			} else {
+				job.task.fail(failures[i]);
+			}
+			finish(job);
+		}
+	}
+	
+	
+	
+	private void finish(Job job) {
+		job.future.run();
+		finished.add(job);
+	}
+	
+	
+	
+	/* Called when a thread of a stage stops. When the last thread of a stage stops, the threads of the next stage are told
+	 * that there are no more tasks.
+	 */
+	private void stopped(int stage) {
+		if (running[stage].decrementAndGet() > 0) return;
+		if (stage+1 < STAGES.length) {
+			end(stage+1);
+		} else {
+			terminated.countDown();
+		}
+	}
+	
+	
+	
+	/* Queues one end per thread of a stage, even if the current thread is interrupted.
+	 */
+	private void end(int stage) {
+		boolean interrupted = false;
+		for (int i=0;i<threads[stage];i++) {
+			while (true) {
+				try {
+					queues.get(stage).put(END);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	
+	/**
+	 * A task on its way through the stages.
+	 */
+	private static class Job {
+		
+		private final RunnableProcess task;
+		private final MeterReader reader;
+		private final FutureTask<RunnableProcess> future;
+		
+		private Job(RunnableProcess task) {
+			this.task = task;
+			this.reader = task == null ? null : task.getReader();
+			this.future = new FutureTask<RunnableProcess>(NOTHING, task);
+		}
+	}
+	
+	
+	
+	/**
+	 * Runs one stage until the end of the tasks.
+	 */
+	private class Worker implements Runnable {
+		
+		private final int stage;
+		
+		private Worker(int stage) {
+			this.stage = stage;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				if (stage == CLASSIFY) {
+					classify();
+				} else {
+					process(stage);
+				}
+			} catch (InterruptedException e) {
+				// stopped
+			} finally {
+				stopped(stage);
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+/**
+ * Abstract class to transform gray images to black and white, either with a fixed level or with a level computed for each pixel
+ * from the pixels around it (local adaptive thresholding), which copes with uneven lighting of the dial.
+ * The method and its parameters are chosen for each meter type (see TypeSpec.getBinarization).
+ * 
+ * The adaptive methods are those of Sauvola and Bradley. The mean and the standard deviation of the square window centred on
+ * each pixel are taken from integral images of the pixels and of their squares, so the time spent per pixel does not depend on
+ * the size of the window. Both methods were designed for dark text on a bright background, whereas the digits of the dial
+ * are bright on a dark background, as the blobs of Blobs: they are applied to the inverted image.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public abstract class Binarizer {
+	
+	/** Pixels brighter than LEVEL are white. */
+	public static final int FIXED = 0;
+	
+	/** Method of Sauvola: the level depends on the mean and the standard deviation of the window. */
+	public static final int SAUVOLA = 1;
+	
+	/** Method of Bradley: the level depends on the mean of the window. */
+	public static final int BRADLEY = 2;
+	
+	/** Level of the method FIXED. */
+	public static final int LEVEL = 120;
+	
+	/** Default size of the window, in pixels. */
+	public static final int DEFAULT_WINDOW = 31;
+	
+	/** Default parameter k of the method of Sauvola. */
+	public static final double DEFAULT_SAUVOLA_K = 0.2;
+	
+	/** Default parameter t of the method of Bradley. */
+	public static final double DEFAULT_BRADLEY_T = 0.15;
+	
+	/** Dynamic range of the standard deviation in the method of Sauvola. */
+	private static final double R = 128;
+	
+	
+	
+	/** Gets a method from its name.
+	 * @param name - fixed, sauvola or bradley, in any case.
+	 * @return FIXED, SAUVOLA or BRADLEY.
+	 */
+	public static int method(String name) {
+		if (name.equalsIgnoreCase("fixed")) return FIXED;
+		if (name.equalsIgnoreCase("sauvola")) return SAUVOLA;
+		if (name.equalsIgnoreCase("bradley")) return BRADLEY;
+		throw new IllegalArgumentException("Unknown binarization method: " + name + ".");
+	}
+	
+	
+	
+	/** Transforms a gray image to black and white.
+	 * @param gray - pixels of the gray image, row after row.
+	 * @param width - width of the image.
+	 * @param height - height of the image.
+	 * @param method - FIXED, SAUVOLA or BRADLEY.
+	 * @param window - size of the window of the adaptive methods, in pixels. 0 for DEFAULT_WINDOW.
+	 * @param k - parameter k of the method of Sauvola or t of the method of Bradley. 0 for the default value of the method.
+	 * @param res - array of at least width*height bytes in which the pixels of the black and white image are written (0 or 255).
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @param scratch - buffers to borrow the integral images from, or null to allocate them.
+	 */
+	public static void binarize(final byte[] gray, final int width, int height, int method, int window, double k, final byte[] res,
+			int parallelism, ScratchBuffers scratch) {
+		if (method == FIXED) {
+			RowStrips.run(height, parallelism, new RowStrips.Task() {
+				@Override
+				public void run(int y0, int y1) {
+					for (int i=y0*width, end=y1*width;i<end;i++) {
+						res[i] = (gray[i]&0xff) > LEVEL ? (byte) 255 : 0;
+					}
+				}
+			});
+			return;
+		}
+		if (method != SAUVOLA && method != BRADLEY) {
+			throw new IllegalArgumentException("Unknown binarization method: " + method + ".");
+		}
+		
+		final int n = (width+1)*(height+1);
+		final double[] integral = scratch == null ? new double[2*n] : scratch.doubles(ScratchBuffers.INTEGRAL, 2*n);
+		integrate(gray, width, height, integral, n);
+		
+		final int w = width, h = height;
+		final int r = (window > 0 ? window : DEFAULT_WINDOW)/2;
+		final boolean sauvola = method == SAUVOLA;
+		final double p = k > 0 ? k : (sauvola ? DEFAULT_SAUVOLA_K : DEFAULT_BRADLEY_T);
+		RowStrips.run(height, parallelism, new RowStrips.Task() {
+			@Override
+			public void run(int y0, int y1) {
+				for (int y=y0;y<y1;y++) {
+					int top = Math.max(0, y-r)*(w+1);
+					int bottom = (Math.min(h-1, y+r) + 1)*(w+1);
+					int rows = bottom/(w+1) - top/(w+1);
+					for (int x=0;x<w;x++) {
+						int left = Math.max(0, x-r);
+						int right = Math.min(w-1, x+r) + 1;
+						double count = rows*(right-left);
+						double sum = integral[bottom+right] - integral[bottom+left] - integral[top+right] + integral[top+left];
+						
+						/* Mean of the inverted image.
+						 */
+						double m = 255 - sum/count;
+						double level;
+						if (sauvola) {
+							double sq = integral[n+bottom+right] - integral[n+bottom+left] - integral[n+top+right] + integral[n+top+left];
+							double mean = sum/count;
+							double s = Math.sqrt(Math.max(0, sq/count - mean*mean));
+							level = m*(1 + p*(s/R - 1));
+						} else {
+							level = m*(1 - p);
+						}
+						
+						/* A pixel of the digits is dark enough in the inverted image.
+						 */
+						res[y*w+x] = 255 - (gray[y*w+x]&0xff) < level ? (byte) 255 : 0;
+					}
+				}
+			}
+		});
+	}
+	
+	
+	
+	/* Computes the integral images of the pixels and of their squares: integral[(y+1)*(width+1) + x+1] is the sum of the pixels
+	 * of the rectangle from (0,0) to (x,y) included, and integral[n + (y+1)*(width+1) + x+1] the sum of their squares.
+	 * Sums of 8-bit pixels are exact in doubles for any image that fits in an array.
+	 */
+	private static void integrate(byte[] gray, int width, int height, double[] integral, int n) {
+		for (int x=0;x<=width;x++) {
+			integral[x] = 0;
+			integral[n+x] = 0;
+		}
+		for (int y=0;y<height;y++) {
+			int row = (y+1)*(width+1);
+			int above = y*(width+1);
+			integral[row] = 0;
+			integral[n+row] = 0;
+			double sum = 0, sq = 0;
+			for (int x=0;x<width;x++) {
+				int v = gray[y*width+x]&0xff;
+				sum += v;
+				sq += v*v;
+				integral[row+x+1] = integral[above+x+1] + sum;
+				integral[n+row+x+1] = integral[n+above+x+1] + sq;
+			}
+		}
+	}
+}
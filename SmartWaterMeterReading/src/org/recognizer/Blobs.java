@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import java.util.Arrays;
+
+import ij.measure.ResultsTable;
+
+/**
+ * This class finds and measures the blobs of a binary mask: sets of pixels of value 255 connected by their sides or corners.
+ * Blobs are labelled with a union-find algorithm working directly on the pixels of the mask, in a single pass that only keeps
+ * the labels of two rows, and their area, centroid and bounding box are stored in primitive arrays.
+ * 
+ * Blobs are numbered in the order of their first pixel in raster order, as ImageJ's ParticleAnalyzer does, and toResultsTable()
+ * gives the same table as ParticleAnalyzer with measurements AREA, CENTROID and RECT.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class Blobs {
+	
+	private int count;
+	private int[] area;
+	private double[] xCentroid;
+	private double[] yCentroid;
+	private int[] x;
+	private int[] y;
+	private int[] width;
+	private int[] height;
+	
+	
+	
+	private Blobs(int n) {
+		area = new int[n];
+		xCentroid = new double[n];
+		yCentroid = new double[n];
+		x = new int[n];
+		y = new int[n];
+		width = new int[n];
+		height = new int[n];
+	}
+	
+	
+	
+	/** Finds and measures the blobs of a binary mask.
+	 * @param mask - pixels of the mask, row after row. Pixels of value 255 belong to blobs, pixels of value 0 to the background.
+	 * @param w - width of the mask.
+	 * @param h - height of the mask.
+	 * @param minArea - the minimal area a blob must have to be kept.
+	 * @return The blobs having an area of at least 'minArea' pixels.
+	 */
+	public static Blobs find(byte[] mask, int w, int h, int minArea) {
+		return find(mask, w, 0, 0, w, h, minArea, null);
+	}
+	
+	
+	
+	/** Finds and measures the blobs of a binary mask, with the labels of the pixels kept in buffers of the reading.
+	 * @param mask - pixels of the mask, row after row. Pixels of value 255 belong to blobs, pixels of value 0 to the background.
+	 * @param w - width of the mask.
+	 * @param h - height of the mask.
+	 * @param minArea - the minimal area a blob must have to be kept.
+	 * @param scratch - buffers to borrow the labels from, or null to allocate them.
+	 * @return The blobs having an area of at least 'minArea' pixels.
+	 */
+	public static Blobs find(byte[] mask, int w, int h, int minArea, ScratchBuffers scratch) {
+		return find(mask, w, 0, 0, w, h, minArea, scratch);
+	}
+	
+	
+	
+	/** Finds and measures the blobs of a rectangular region of a binary mask. Pixels outside of the region are ignored.
+	 * @param mask - pixels of the mask, row after row. Pixels of value 255 belong to blobs, pixels of value 0 to the background.
+	 * @param w - width of the mask.
+	 * @param x0 - x-coordinate of the region.
+	 * @param y0 - y-coordinate of the region.
+	 * @param width - width of the region.
+	 * @param height - height of the region.
+	 * @param minArea - the minimal area a blob must have to be kept.
+	 * @return The blobs of the region having an area of at least 'minArea' pixels, with coordinates in the mask.
+	 */
+	public static Blobs find(byte[] mask, int w, int x0, int y0, int width, int height, int minArea) {
+		return find(mask, w, x0, y0, width, height, minArea, null);
+	}
+	
+	
+	
+	/** Finds and measures the blobs of a rectangular region of a binary mask, with the labels of the pixels kept in buffers of
+	 * the reading. Pixels outside of the region are ignored.
+	 * @param mask - pixels of the mask, row after row. Pixels of value 255 belong to blobs, pixels of value 0 to the background.
+	 * @param w - width of the mask.
+	 * @param x0 - x-coordinate of the region.
+	 * @param y0 - y-coordinate of the region.
+	 * @param width - width of the region.
+	 * @param height - height of the region.
+	 * @param minArea - the minimal area a blob must have to be kept.
+	 * @param scratch - buffers to borrow the labels from, or null to allocate them.
+	 * @return The blobs of the region having an area of at least 'minArea' pixels, with coordinates in the mask.
+	 */
+	public static Blobs find(byte[] mask, int w, int x0, int y0, int width, int height, int minArea, ScratchBuffers scratch) {
+		if (x0 < 0 || y0 < 0 || width < 0 || height < 0 || x0+width > w || (long) (y0+height)*w > mask.length) {
+			throw new IllegalArgumentException("The region is not in the mask.");
+		}
+		
+		/* Single pass over the region, keeping the labels of the previous row only. Label 0 is the background.
+		 * Measurements are accumulated per provisional label, and equivalent labels are merged at the end into the smallest one,
+		 * which is the label of the first pixel of the blob in raster order.
+		 * If the pixel above belongs to a blob, its neighbours on the left and above left are already in the same blob.
+		 * The labels of the previous and current rows are stored at the offsets prev and cur of the array labels.
+		 */
+		int[] labels = scratch == null ? new int[2*width] : scratch.ints(ScratchBuffers.LABELS, 2*width);
+		int prev = 0;
+		int cur = width;
+		Stats stats = new Stats();
+		for (int j=0;j<height;j++) {
+			int row = (y0+j)*w + x0;
+			for (int i=0;i<width;i++) {
+				if (mask[row+i] != (byte) 255) {
+					labels[cur+i] = 0;
+					continue;
+				}
+				
+				int l = 0;
+				if (j > 0) {
+					if (labels[prev+i] != 0) {
+						l = labels[prev+i];
+					} else {
+						if (i > 0 && labels[prev+i-1] != 0) l = labels[prev+i-1];
+						if (i+1 < width && labels[prev+i+1] != 0) {
+							if (l == 0) l = labels[prev+i+1];
+							else stats.union(l, labels[prev+i+1]);
+						}
+					}
+				}
+				if (i > 0 && labels[cur+i-1] != 0) {
+					if (l == 0) l = labels[cur+i-1];
+					else stats.union(l, labels[cur+i-1]);
+				}
+				if (l == 0) {
+					l = stats.newLabel(x0+i, y0+j);
+				}
+				labels[cur+i] = l;
+				stats.add(l, x0+i, y0+j);
+			}
+			int tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+		
+		int n = stats.merge();
+		int kept = 0;
+		for (int l=1;l<n;l++) {
+			if (stats.parent[l] == l && stats.area[l] >= minArea) kept++;
+		}
+		Blobs res = new Blobs(kept);
+		for (int l=1;l<n;l++) {
+			if (stats.parent[l] != l || stats.area[l] < minArea) continue;
+			int b = res.count++;
+			res.area[b] = stats.area[l];
+			res.xCentroid[b] = (double) stats.sumX[l]/stats.area[l] + 0.5;
+			res.yCentroid[b] = (double) stats.sumY[l]/stats.area[l] + 0.5;
+			res.x[b] = stats.minX[l];
+			res.y[b] = stats.minY[l];
+			res.width[b] = stats.maxX[l] - stats.minX[l] + 1;
+			res.height[b] = stats.maxY[l] - stats.minY[l] + 1;
+		}
+		return res;
+	}
+	
+	
+	
+	/**
+	 * Measurements of the provisional labels and their equivalences.
+	 */
+	private static class Stats {
+		
+		private int next = 1;
+		private int[] parent = new int[64];
+		private int[] area = new int[64];
+		private long[] sumX = new long[64];
+		private long[] sumY = new long[64];
+		private int[] minX = new int[64];
+		private int[] minY = new int[64];
+		private int[] maxX = new int[64];
+		private int[] maxY = new int[64];
+		
+		private int newLabel(int i, int j) {
+			if (next == parent.length) {
+				int n = 2*parent.length;
+				parent = Arrays.copyOf(parent, n);
+				area = Arrays.copyOf(area, n);
+				sumX = Arrays.copyOf(sumX, n);
+				sumY = Arrays.copyOf(sumY, n);
+				minX = Arrays.copyOf(minX, n);
+				minY = Arrays.copyOf(minY, n);
+				maxX = Arrays.copyOf(maxX, n);
+				maxY = Arrays.copyOf(maxY, n);
+			}
+			int l = next++;
+			parent[l] = l;
+			minX[l] = i;
+			minY[l] = j;
+			maxX[l] = i;
+			maxY[l] = j;
+			return l;
+		}
+		
+		private void add(int l, int i, int j) {
+			area[l]++;
+			sumX[l] += i;
+			sumY[l] += j;
+			if (i < minX[l]) minX[l] = i;
+			if (i > maxX[l]) maxX[l] = i;
+			maxY[l] = j;
+		}
+		
+		private int find(int l) {
+			while (parent[l] != l) {
+				parent[l] = parent[parent[l]];
+				l = parent[l];
+			}
+			return l;
+		}
+		
+		private void union(int l1, int l2) {
+			int r1 = find(l1);
+			int r2 = find(l2);
+			if (r1 < r2) parent[r2] = r1;
+			else if (r2 < r1) parent[r1] = r2;
+		}
+		
+		/* Adds the measurements of each label to the smallest equivalent label, which becomes its own parent.
+		 * Returns the number of labels used.
+		 */
+		private int merge() {
+			for (int l=1;l<next;l++) {
+				int r = find(l);
+				parent[l] = r;
+				if (r == l) continue;
+				area[r] += area[l];
+				sumX[r] += sumX[l];
+				sumY[r] += sumY[l];
+				minX[r] = Math.min(minX[r], minX[l]);
+				minY[r] = Math.min(minY[r], minY[l]);
+				maxX[r] = Math.max(maxX[r], maxX[l]);
+				maxY[r] = Math.max(maxY[r], maxY[l]);
+			}
+			return next;
+		}
+	}
+	
+	
+	
+	/** Builds a table describing the blobs, with the columns of ParticleAnalyzer: AREA, X_CENTROID, Y_CENTROID, ROI_X, ROI_Y,
+	 * ROI_WIDTH and ROI_HEIGHT.
+	 * @return A table with one row per blob.
+	 */
+	public ResultsTable toResultsTable() {
+		ResultsTable rt = new ResultsTable();
+		for (int i=0;i<count;i++) {
+			rt.incrementCounter();
+			rt.addValue(ResultsTable.AREA, area[i]);
+			rt.addValue(ResultsTable.X_CENTROID, xCentroid[i]);
+			rt.addValue(ResultsTable.Y_CENTROID, yCentroid[i]);
+			rt.addValue(ResultsTable.ROI_X, x[i]);
+			rt.addValue(ResultsTable.ROI_Y, y[i]);
+			rt.addValue(ResultsTable.ROI_WIDTH, width[i]);
+			rt.addValue(ResultsTable.ROI_HEIGHT, height[i]);
+		}
+		return rt;
+	}
+	
+	
+	
+	/**
+	 * @return The number of blobs.
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	
+	
+	/**
+	 * @param i - index of a blob.
+	 * @return The number of pixels of the blob.
+	 */
+	public int getArea(int i) {
+		return area[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of a blob.
+	 * @return The x-coordinate of the centroid of the blob, pixels being centered on (x+0.5, y+0.5).
+	 */
+	public double getXCentroid(int i) {
+		return xCentroid[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of a blob.
+	 * @return The y-coordinate of the centroid of the blob, pixels being centered on (x+0.5, y+0.5).
+	 */
+	public double getYCentroid(int i) {
+		return yCentroid[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of a blob.
+	 * @return The x-coordinate of the bounding box of the blob.
+	 */
+	public int getX(int i) {
+		return x[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of a blob.
+	 * @return The y-coordinate of the bounding box of the blob.
+	 */
+	public int getY(int i) {
+		return y[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of a blob.
+	 * @return The width of the bounding box of the blob.
+	 */
+	public int getWidth(int i) {
+		return width[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of a blob.
+	 * @return The height of the bounding box of the blob.
+	 */
+	public int getHeight(int i) {
+		return height[i];
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * This class contains the binary image of the number dial of a picture (see Recognizer.getDial and Recognizer.binarize) and the
+ * hands it was extracted from. The pixels belong to the Dial and are never modified, so that it can be handed from a thread to
+ * another.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public final class Dial {
+	
+	private final HandAssignment hands;
+	private final int width;
+	private final int height;
+	private final byte[] pixels;
+	
+	
+	
+	/**
+	 * @param hands - the hands the dial was extracted from.
+	 * @param binary - binary image of the dial. Its pixels are copied.
+	 */
+	public Dial(HandAssignment hands, ImageProcessor binary) {
+		this(hands, binary.getWidth(), binary.getHeight(), ((byte[]) binary.convertToByte(false).getPixels()).clone());
+	}
+	
+	
+	
+	/**
+	 * @param pixels - pixels of the binary image, used without copy.
+	 */
+	Dial(HandAssignment hands, int width, int height, byte[] pixels) {
+		this.hands = hands;
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+	}
+	
+	
+	
+	public HandAssignment getHands() {
+		return hands;
+	}
+	
+	
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	
+	
+	/**
+	 * @return A copy of the binary image of the dial.
+	 */
+	public ImageProcessor getProcessor() {
+		return new ByteProcessor(width, height, pixels.clone(), null);
+	}
+	
+	
+	
+	/**
+	 * @return The binary image of the dial on the pixels of the Dial, for the methods of this package that only read it.
+	 */
+	ImageProcessor processor() {
+		return new ByteProcessor(width, height, pixels, null);
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+/**
+ * This class contains the digits read on a picture and how close each image of digit is to the templates of the meter type:
+ * the distance to the template of the digit read and the nearest other template with its distance. The difference between
+ * the two distances (getMargin()) tells how sure the reading of a digit is: a small or negative margin means that the image is
+ * almost as close, or closer, to another template.
+ * 
+ * The scores do not change once returned by the Recognizer: the arrays are returned as copies, so that they can be handed from a
+ * thread to another. The getters by index avoid the copies.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class DigitScores {
+	
+	private final int[] digits;
+	private final double[] distances;
+	private final int[] runnersUp;
+	private final double[] runnerUpDistances;
+	
+	
+	
+	/** The arrays are used without copy.
+	 * @param digits - digits read.
+	 * @param distances - distance of each image to the template of the digit read.
+	 * @param runnersUp - nearest template other than the digit read for each image, -1 if there is none.
+	 * @param runnerUpDistances - distance of each image to its runner-up.
+	 */
+	DigitScores(int[] digits, double[] distances, int[] runnersUp, double[] runnerUpDistances) {
+		this.digits = digits;
+		this.distances = distances;
+		this.runnersUp = runnersUp;
+		this.runnerUpDistances = runnerUpDistances;
+	}
+	
+	
+	
+	/**
+	 * @return The number of digits.
+	 */
+	public int getCount() {
+		return digits.length;
+	}
+	
+	
+	
+	/**
+	 * @return A copy of the digits read.
+	 */
+	public int[] getDigits() {
+		return digits.clone();
+	}
+	
+	
+	
+	/**
+	 * @return A copy of the distances of the images to the templates of the digits read.
+	 */
+	public double[] getDistances() {
+		return distances.clone();
+	}
+	
+	
+	
+	/**
+	 * @return A copy of the runners-up of the images.
+	 */
+	public int[] getRunnersUp() {
+		return runnersUp.clone();
+	}
+	
+	
+	
+	/**
+	 * @return A copy of the distances of the images to their runners-up.
+	 */
+	public double[] getRunnerUpDistances() {
+		return runnerUpDistances.clone();
+	}
+	
+	
+	
+	/**
+	 * @param i - index of the digit.
+	 * @return The digit read.
+	 */
+	public int getDigit(int i) {
+		return digits[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of the digit.
+	 * @return The distance of the image to the template of the digit read.
+	 */
+	public double getDistance(int i) {
+		return distances[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of the digit.
+	 * @return The nearest template other than the digit read, -1 if there is none.
+	 */
+	public int getRunnerUp(int i) {
+		return runnersUp[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of the digit.
+	 * @return The distance of the image to its runner-up.
+	 */
+	public double getRunnerUpDistance(int i) {
+		return runnerUpDistances[i];
+	}
+	
+	
+	
+	/**
+	 * @param i - index of the digit.
+	 * @return The distance to the runner-up minus the distance to the template of the digit read.
+	 */
+	public double getMargin(int i) {
+		return runnerUpDistances[i] - distances[i];
+	}
+	
+	
+	
+	/**
+	 * @return The smallest margin of all the digits, or positive infinity if there is no digit.
+	 */
+	public double getMinMargin() {
+		double min = Double.POSITIVE_INFINITY;
+		for (int i=0;i<digits.length;i++) {
+			double m = getMargin(i);
+			if (m < min) min = m;
+		}
+		return min;
+	}
+	
+	
+	
+	/* Replaces the nearest template of an image by another digit. The nearest template becomes the runner-up.
+	 */
+	void force(int i, int digit, double distance) {
+		if (digit == digits[i]) return;
+		runnersUp[i] = digits[i];
+		runnerUpDistances[i] = distances[i];
+		digits[i] = digit;
+		distances[i] = distance;
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright (C) 2013 pauline ruegg-reymond
+ * <pauline.ruegg.reymond@gmail.com>
+ * eauservice
+ * rue de Genve 36
+ * case postale 7416
+ * CH-1002 Lausanne
+ * 
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import java.util.Arrays;
+
+/**
+ * This class computes the deformation between interest points of a template image and the corresponding points of a processed
+ * image, with one of the methods of Tools (AFFINE_2D, PERSPECTIVE, MLS_AFFINE, MLS_SIMILARITY or MLS_RIGID).
+ * 
+ * A transform is built in two steps: the constructor computes what only depends on the template points (typically once per meter
+ * type), then fit() computes what depends on the points found in a picture (once per picture). The fitted transform can then map
+ * any number of points with map(). Instances are immutable and can be shared between threads.
+ * 
+ * @author pauline ruegg-reymond
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class FittedTransform {
+	
+	private final int flag;
+	private final double[][] p;
+	private final double[][] q;
+	
+	/* AFFINE_2D: inverse of the matrix of the template vectors. PERSPECTIVE: projective basis of the template points.
+	 */
+	private final double[][] templateMatrix;
+	
+	/* AFFINE_2D: linear part of the transform. PERSPECTIVE: inverse of the projective basis of the image points.
+	 */
+	private final double[][] imageMatrix;
+	
+	
+	
+	/** Computes the template side of a transform.
+	 * @param p - interest points in template image.
+	 * @param flag - indicates the method (see Tools). An unknown method is replaced by AFFINE_2D.
+	 */
+	public FittedTransform(double[][] p, int flag) {
+		if (p.length == 0 || p[0].length != 2) {
+			throw new IllegalArgumentException("The points are not 2d points.");
+		}
+		if (flag < 0 || flag > Tools.MLS_RIGID) flag = Tools.AFFINE_2D;
+		
+		this.flag = flag;
+		this.p = copy(p);
+		this.q = null;
+		this.imageMatrix = null;
+		
+		if (flag == Tools.AFFINE_2D) {
+			if (p.length < 3) throw new IllegalArgumentException("Wrong number of interest points");
+			double[][] A = {{p[1][0] - p[0][0], p[2][0] - p[0][0]}, {p[1][1] - p[0][1], p[2][1] - p[0][1]}};
+			templateMatrix = LinAlg.inv2(A);
+		} else if (flag == Tools.PERSPECTIVE) {
+			if (p.length < 4) throw new IllegalArgumentException("Wrong number of interest points");
+			templateMatrix = projectiveBasis(p);
+		} else {
+			templateMatrix = null;
+		}
+	}
+	
+	
+	
+	private FittedTransform(FittedTransform template, double[][] q) {
+		this.flag = template.flag;
+		this.p = template.p;
+		this.q = copy(q);
+		this.templateMatrix = template.templateMatrix;
+		
+		if (flag == Tools.AFFINE_2D) {
+			double[][] B = {{q[1][0] - q[0][0], q[2][0] - q[0][0]}, {q[1][1] - q[0][1], q[2][1] - q[0][1]}};
+			imageMatrix = LinAlg.matMult(B, templateMatrix);
+		} else if (flag == Tools.PERSPECTIVE) {
+			imageMatrix = LinAlg.inv3(projectiveBasis(q));
+		} else {
+			imageMatrix = null;
+		}
+	}
+	
+	
+	
+	/** Computes the image side of the transform.
+	 * @param q - interest points in processed image, corresponding to the template points.
+	 * @return A transform mapping the template points to 'q'.
+	 */
+	public FittedTransform fit(double[][] q) {
+		if (q.length != p.length || q[0].length != 2) {
+			throw new IllegalArgumentException("p and q don't have the same length or the points are not 2d points.");
+		}
+		return new FittedTransform(this, q);
+	}
+	
+	
+	
+	/**
+	 * @return true if the image side of the transform has been computed by fit().
+	 */
+	public boolean isFitted() {
+		return q != null;
+	}
+	
+	
+	
+	/**
+	 * @return The method of the transform (see Tools).
+	 */
+	public int getFlag() {
+		return flag;
+	}
+	
+	
+	
+	/** Tests whether this transform was built with given template points and method.
+	 * @param p - interest points in template image.
+	 * @param flag - indicates the method.
+	 * @return true if the template side of this transform can be used for 'p' and 'flag'.
+	 */
+	public boolean hasTemplate(double[][] p, int flag) {
+		return this.flag == flag && Arrays.deepEquals(this.p, p);
+	}
+	
+	
+	
+	/** Computes the deformation of one point.
+	 * @param u - point of template image we want to find in processed image.
+	 * @return Position of point in processed image corresponding to 'u'.
+	 */
+	public double[] map(double[] u) {
+		if (q == null) {
+			throw new IllegalStateException("The transform is not fitted.");
+		}
+		if (u.length != 2) {
+			throw new IllegalArgumentException("u is not a 2d point.");
+		}
+		
+		double[] v = {u[0], u[1]};
+		
+		if (flag == Tools.AFFINE_2D) {
+			double[][] M = imageMatrix;
+			double v0 = u[0] - p[0][0];
+			double v1 = u[1] - p[0][1];
+			v[0] = M[0][0]*v0 + M[0][1]*v1 + q[0][0];
+			v[1] = M[1][0]*v0 + M[1][1]*v1 + q[0][1];
+			
+		} else if (flag == Tools.PERSPECTIVE) {
+			double[][] A = templateMatrix, B = imageMatrix;
+			double w0 = B[0][0]*u[0] + B[0][1]*u[1] + B[0][2];
+			double w1 = B[1][0]*u[0] + B[1][1]*u[1] + B[1][2];
+			double w2 = B[2][0]*u[0] + B[2][1]*u[1] + B[2][2];
+			double x0 = A[0][0]*w0 + A[0][1]*w1 + A[0][2]*w2;
+			double x1 = A[1][0]*w0 + A[1][1]*w1 + A[1][2]*w2;
+			double x2 = A[2][0]*w0 + A[2][1]*w1 + A[2][2]*w2;
+			v[0] = x0/x2;
+			v[1] = x1/x2;
+			
+		} else {
+			v = movingLeastSquares(u);
+		}
+		
+		return v;
+	}
+	
+	
+	
+	/** Computes the deformation of several points.
+	 * @param u - points of template image we want to find in processed image.
+	 * @return Positions of points in processed image corresponding to the points of 'u'.
+	 */
+	public double[][] map(double[][] u) {
+		double[][] v = new double[u.length][];
+		for (int i=0;i<u.length;i++) {
+			v[i] = map(u[i]);
+		}
+		return v;
+	}
+	
+	
+	
+	/* Weights of the moving least squares depend on the mapped point, so nothing can be computed in advance.
+	 */
+	private double[] movingLeastSquares(double[] u) {
+		double[] v = {u[0], u[1]};
+		double[] pStar = {0, 0};
+		double[] qStar = {0, 0};
+		double[] w = new double[p.length];
+		double tmp = 0;
+		for (int i=0;i<p.length;i++) {
+			w[i] = (p[i][0] - u[0])*(p[i][0] - u[0]) + (p[i][1] - u[1])*(p[i][1] - u[1]);
+			w[i] = 1/w[i];
+			pStar[0] += w[i]*p[i][0];
+			pStar[1] += w[i]*p[i][1];
+			qStar[0] += w[i]*q[i][0];
+			qStar[1] += w[i]*q[i][1];
+			tmp += w[i];
+		}
+		pStar = LinAlg.scalVectMult(1/tmp, pStar);
+		qStar = LinAlg.scalVectMult(1/tmp, qStar);
+		
+		double[][] M = {{0,0},{0,0}};
+		
+		if (flag == Tools.MLS_AFFINE) {
+			double[][] N = {{0,0},{0,0}};
+			for (int i=0;i<p.length;i++) {
+				double p0 = p[i][0] - pStar[0];
+				double p1 = p[i][1] - pStar[1];
+				double q0 = q[i][0] - qStar[0];
+				double q1 = q[i][1] - qStar[1];
+				double[][] T = {{w[i]*p0*q0, w[i]*p0*q1}, {w[i]*p1*q0, w[i]*p1*q1}};
+				M = LinAlg.addMat(M, T);
+				double[][] S = {{w[i]*p0*p0, w[i]*p1*p0}, {w[i]*p0*p1, w[i]*p1*p1}};
+				N = LinAlg.addMat(N, S);
+			}
+			
+			N = LinAlg.inv2(N);
+			M = LinAlg.matMult(M, N);
+		} else if (flag == Tools.MLS_SIMILARITY) {
+			tmp = 0;
+			for (int i=0;i<p.length;i++) {
+				double p0 = p[i][0] - pStar[0];
+				double p1 = p[i][1] - pStar[1];
+				double q0 = q[i][0] - qStar[0];
+				double q1 = q[i][1] - qStar[1];
+				double[][] T = {{w[i]*(p0*q0 + p1*q1), w[i]*(p0*q1 - p1*q0)}, {w[i]*(p1*q0 - p0*q1), w[i]*(p1*q1 + p0*q0)}};
+				M = LinAlg.addMat(M, T);
+				tmp += w[i]*(p0*p0 + p1*p1);
+			}
+			M = LinAlg.scalMatMult(1/tmp, M);
+		} else if (flag == Tools.MLS_RIGID) {
+			tmp = 0;
+			double tmp2 = 0;
+			for (int i=0;i<p.length;i++) {
+				double p0 = p[i][0] - pStar[0];
+				double p1 = p[i][1] - pStar[1];
+				double q0 = q[i][0] - qStar[0];
+				double q1 = q[i][1] - qStar[1];
+				double[][] T = {{w[i]*(p0*q0 + p1*q1), w[i]*(p0*q1 - p1*q0)}, {w[i]*(p1*q0 - p0*q1), w[i]*(p1*q1 + p0*q0)}};
+				M = LinAlg.addMat(M, T);
+				tmp += w[i]*(p0*q0 + p1*q1);
+				tmp2 += w[i]*(p1*q0 - p0*q1);
+			}
+			tmp *= tmp;
+			tmp2 *= tmp2;
+			tmp += tmp2;
+			tmp = Math.sqrt(tmp);
+			M = LinAlg.scalMatMult(1/tmp, M);
+		}
+		
+		v[0] -= pStar[0];
+		v[1] -= pStar[1];
+		v = LinAlg.matVectMult(M, v);
+		v = LinAlg.addVect(v, qStar);
+		return v;
+	}
+	
+	
+	
+	/* Matrix of the projective basis given by the first four points: the columns are the first three points in homogeneous
+	 * coordinates, scaled so that their sum is the fourth point.
+	 */
+	private static double[][] projectiveBasis(double[][] p) {
+		double[][] A = {{p[0][0], p[1][0], p[2][0]},
+				{p[0][1], p[1][1], p[2][1]},
+				{1, 1, 1}};
+		double[][] C = LinAlg.inv3(A);
+		double[] c = {p[3][0], p[3][1], 1};
+		c = LinAlg.matVectMult(C, c);
+		C = LinAlg.diag(c);
+		return LinAlg.matMult(A, C);
+	}
+	
+	
+	
+	private static double[][] copy(double[][] p) {
+		double[][] res = new double[p.length][];
+		for (int i=0;i<p.length;i++) {
+			res[i] = p[i].clone();
+		}
+		return res;
+	}
+}
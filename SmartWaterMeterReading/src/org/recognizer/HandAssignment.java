@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+/**
+ * This class contains the red hands found on a picture: the line of each hand in the table of blobs (see Recognizer.findBlob)
+ * and the coordinates of the center of each blob, that is the point of the picture matching the interest point of the meter
+ * type. It is computed by Recognizer.assignHands and does not change once created, so that it can be handed from a thread to
+ * another.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public final class HandAssignment {
+	
+	private final int middle;
+	private final int tenthousandth;
+	private final int tenth;
+	private final int thousandth;
+	private final int hundredth;
+	private final double[] x;
+	private final double[] y;
+	
+	
+	
+	/**
+	 * @param middle - line of the middle button in the table of blobs.
+	 * @param tenthousandth - line of the hand of the ten-thousandths.
+	 * @param tenth - line of the hand of the tenths.
+	 * @param thousandth - line of the hand of the thousandths.
+	 * @param hundredth - line of the hand of the hundredths.
+	 * @param x - x coordinate of the center of each blob, by line of the table. The array is copied.
+	 * @param y - y coordinate of the center of each blob, by line of the table. The array is copied.
+	 */
+	public HandAssignment(int middle, int tenthousandth, int tenth, int thousandth, int hundredth, double[] x, double[] y) {
+		if (x.length != 5 || y.length != 5) {
+			throw new IllegalArgumentException("Wrong number of interest points.");
+		}
+		if (middle < 0 || tenthousandth < 0 || tenth < 0 || thousandth < 0 || hundredth < 0) {
+			throw new IllegalArgumentException("Interest points are not identified.");
+		}
+		this.middle = middle;
+		this.tenthousandth = tenthousandth;
+		this.tenth = tenth;
+		this.thousandth = thousandth;
+		this.hundredth = hundredth;
+		this.x = x.clone();
+		this.y = y.clone();
+	}
+	
+	
+	
+	public int getMiddle() {
+		return middle;
+	}
+	
+	
+	
+	public int getTenthousandth() {
+		return tenthousandth;
+	}
+	
+	
+	
+	public int getTenth() {
+		return tenth;
+	}
+	
+	
+	
+	public int getThousandth() {
+		return thousandth;
+	}
+	
+	
+	
+	public int getHundredth() {
+		return hundredth;
+	}
+	
+	
+	
+	/**
+	 * @param blob - line of the blob in the table of blobs.
+	 * @return The x coordinate of the center of the blob.
+	 */
+	public double getX(int blob) {
+		return x[blob];
+	}
+	
+	
+	
+	/**
+	 * @param blob - line of the blob in the table of blobs.
+	 * @return The y coordinate of the center of the blob.
+	 */
+	public double getY(int blob) {
+		return y[blob];
+	}
+	
+	
+	
+	/**
+	 * @return The centers of the middle button and of the hands of the hundredths, ten-thousandths, tenths and thousandths, in
+	 * this order, which is the order of TypeSpec.getInterestPoints.
+	 */
+	public double[][] getInterestPoints() {
+		return new double[][] {{x[middle], y[middle]}, {x[hundredth], y[hundredth]}, {x[tenthousandth], y[tenthousandth]},
+				{x[tenth], y[tenth]}, {x[thousandth], y[thousandth]}};
+	}
+	
+	
+	
+	/** Gives the same hands in other coordinates, e.g. in a region of the picture or in the picture from a reduced preview.
+	 * @param scale - factor applied to the coordinates.
+	 * @param dx - added to the x coordinates after scaling.
+	 * @param dy - added to the y coordinates after scaling.
+	 * @return The hands with centers (x*scale + dx, y*scale + dy).
+	 */
+	public HandAssignment map(double scale, double dx, double dy) {
+		double[] x2 = new double[5];
+		double[] y2 = new double[5];
+		for (int i=0;i<5;i++) {
+			x2[i] = x[i]*scale + dx;
+			y2[i] = y[i]*scale + dy;
+		}
+		return new HandAssignment(middle, tenthousandth, tenth, thousandth, hundredth, x2, y2);
+	}
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import ij.measure.ResultsTable;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * This class reads the index of a meter on a picture in three stages that each return an immutable result: findHands returns
+ * the HandAssignment of the red hands, getDial the Dial extracted with them and readDigits the Reading of the digits of the dial.
+ * A MeterReader keeps no state between calls, so that a single instance can be shared by all the threads reading pictures and
+ * the stages of a picture can be run by different threads.
+ * 
+ * Each call uses a new Recognizer for the intermediate images. With scratch buffers, these images are kept in the ScratchBuffers
+ * of the calling thread; the results returned never refer to them.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class MeterReader {
+	
+	/** The width and the height of the regions returned by getRegionOfInterest are multiples of REGION_GRID. */
+	public static final int REGION_GRID = 64;
+	
+	private final int coarseFactor;
+	private final boolean useScratchBuffers;
+	
+	
+	
+	/**
+	 * Creates a reader that locates the hands on a picture reduced by 4 and uses the scratch buffers of the threads.
+	 */
+	public MeterReader() {
+		this(4, true);
+	}
+	
+	
+	
+	/**
+	 * @param coarseFactor - reduction factor used to locate the red hands before searching them at full resolution (see
+	 * Recognizer.locateRed). 1 searches the whole picture at full resolution.
+	 * @param useScratchBuffers - true to keep the intermediate images in the ScratchBuffers of the calling thread, false to
+	 * allocate them for each picture.
+	 */
+	public MeterReader(int coarseFactor, boolean useScratchBuffers) {
+		if (coarseFactor < 1) {
+			throw new IllegalArgumentException("coarseFactor should be positive.");
+		}
+		this.coarseFactor = coarseFactor;
+		this.useScratchBuffers = useScratchBuffers;
+	}
+	
+	
+	
+	public int getCoarseFactor() {
+		return coarseFactor;
+	}
+	
+	
+	
+	/** Finds the red hands on a picture.
+	 * @param picture - color picture of a meter.
+	 * @return The line and the center of each hand.
+	 */
+	public HandAssignment findHands(ImageProcessor picture) {
+		Recognizer r = recognizer();
+		ImageProcessor red = r.locateRed(picture, coarseFactor, 60);
+		if (red == null) {
+			throw new IllegalArgumentException("The picture is not in color.");
+		}
+		ResultsTable blobs = r.findBlob(red, 60);
+		return r.assignHands(red, blobs);
+	}
+	
+	
+	
+	/** Predicts from a preview of a picture the region that contains the red hands and the dial, so that only this region needs
+	 * to be decoded at full resolution. findHands and getDial give the same results on the region as on the whole picture, in the
+	 * coordinates of the region, as long as the dial is inside the region (see getDialBounds).
+	 * The size of the region is rounded up to a multiple of REGION_GRID, within the picture, so that the regions of the pictures
+	 * of a camera mostly have the same size: the red mask of the region is then kept in the ScratchBuffers of the thread (which
+	 * need an array of the exact size) instead of being allocated for each picture.
+	 * @param preview - color picture reduced by getCoarseFactor(): pixel (i, j) of the preview is pixel (i*factor + factor/2,
+	 * j*factor + factor/2) of the picture, which are the pixels tested by the first pass of locateRed.
+	 * @param width - width of the picture.
+	 * @param height - height of the picture.
+	 * @param type - type of the meter on the picture.
+	 * @return The region, whose origin is a multiple of getCoarseFactor(), or null if the five hands are not found on the preview.
+	 */
+	public Rectangle getRegionOfInterest(ImageProcessor preview, int width, int height, TypeSpec type) {
+		Recognizer r = recognizer();
+		int f = coarseFactor;
+		if (preview.isGrayscale()) {
+			return null;
+		}
+		
+		/* The mask of the preview has its own slot, so that the slot RED_MASK keeps the size of the regions.
+		 */
+		int pw = preview.getWidth(), ph = preview.getHeight();
+		ScratchBuffers scratch = r.getScratchBuffers();
+		byte[] mask = scratch == null ? null : scratch.bytePixels(ScratchBuffers.PREVIEW_MASK, pw*ph);
+		mask = RedMask.compute((int[]) preview.getPixels(), pw, ph, mask);
+		ImageProcessor red = new ByteProcessor(pw, ph, mask, null);
+		Blobs blobs = r.findBlobs(red, Math.max(1, 60/(f*f)));
+		if (blobs.getCount() != 5) {
+			return null;
+		}
+		
+		/* The windows searched by locateRed around the hands, with room for their growth.
+		 */
+		double x0 = width, y0 = height, x1 = 0, y1 = 0;
+		for (int b=0;b<5;b++) {
+			x0 = Math.min(x0, (blobs.getX(b) - 3)*f);
+			y0 = Math.min(y0, (blobs.getY(b) - 3)*f);
+			x1 = Math.max(x1, (blobs.getX(b) + blobs.getWidth(b) + 3)*f);
+			y1 = Math.max(y1, (blobs.getY(b) + blobs.getHeight(b) + 3)*f);
+		}
+		
+		/* The dial, from the hands found on the preview, with a margin for their lower precision.
+		 */
+		HandAssignment hands = r.assignHands(red, blobs.toResultsTable()).map(f, 0, 0);
+		double[][] corners = r.getDialCorners(hands, type);
+		double dx0 = width, dy0 = height, dx1 = 0, dy1 = 0;
+		for (double[] c:corners) {
+			dx0 = Math.min(dx0, c[0]);
+			dy0 = Math.min(dy0, c[1]);
+			dx1 = Math.max(dx1, c[0]);
+			dy1 = Math.max(dy1, c[1]);
+		}
+		double margin = 4*f + 0.1*Math.max(dx1 - dx0, dy1 - dy0);
+		x0 = Math.min(x0, dx0 - margin);
+		y0 = Math.min(y0, dy0 - margin);
+		x1 = Math.max(x1, dx1 + margin);
+		y1 = Math.max(y1, dy1 + margin);
+		
+		int rx0 = Math.max(0, (int) Math.floor(x0/f)*f);
+		int ry0 = Math.max(0, (int) Math.floor(y0/f)*f);
+		int rx1 = Math.min(width, (int) Math.ceil(x1));
+		int ry1 = Math.min(height, (int) Math.ceil(y1));
+		if (rx0 >= rx1 || ry0 >= ry1) {
+			return null;
+		}
+		
+		/* Enlarged to the grid towards the right and the bottom, and moved by a multiple of f towards the left and the top if it
+		 * then goes beyond the picture. It still contains the hands and the dial.
+		 */
+		int rw = Math.min(width, (rx1 - rx0 + REGION_GRID - 1)/REGION_GRID*REGION_GRID);
+		int rh = Math.min(height, (ry1 - ry0 + REGION_GRID - 1)/REGION_GRID*REGION_GRID);
+		if (rx0 + rw > width) {
+			rx0 = Math.max(0, (width - rw)/f*f);
+			rw = Math.min(rw, width - rx0);
+		}
+		if (ry0 + rh > height) {
+			ry0 = Math.max(0, (height - rh)/f*f);
+			rh = Math.min(rh, height - ry0);
+		}
+		return new Rectangle(rx0, ry0, rw, rh);
+	}
+	
+	
+	
+	/** Computes the pixels of a picture that getDial reads, with a margin for the interpolation.
+	 * @param hands - the hands found on the picture.
+	 * @param type - type of the meter on the picture.
+	 * @return The bounding box of the dial, in the coordinates of the hands. It may go beyond the picture.
+	 */
+	public Rectangle getDialBounds(HandAssignment hands, TypeSpec type) {
+		double[][] corners = recognizer().getDialCorners(hands, type);
+		double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+		double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+		for (double[] c:corners) {
+			x0 = Math.min(x0, c[0]);
+			y0 = Math.min(y0, c[1]);
+			x1 = Math.max(x1, c[0]);
+			y1 = Math.max(y1, c[1]);
+		}
+		int rx0 = (int) Math.floor(x0) - 3;
+		int ry0 = (int) Math.floor(y0) - 3;
+		return new Rectangle(rx0, ry0, (int) Math.ceil(x1) + 3 - rx0, (int) Math.ceil(y1) + 3 - ry0);
+	}
+	
+	
+	
+	/** Extracts the binary image of the number dial of a picture.
+	 * @param picture - the picture the hands were found on.
+	 * @param hands - the hands found by findHands.
+	 * @param type - type of the meter on the picture.
+	 * @return The dial.
+	 */
+	public Dial getDial(ImageProcessor picture, HandAssignment hands, TypeSpec type) {
+		Recognizer r = recognizer();
+		ImageProcessor dial = r.getDial(picture, hands, type, 1);
+		
+		/* The binary dial leaves the thread: it is allocated instead of borrowed from the scratch buffers.
+		 */
+		r.setScratchBuffers(null);
+		ImageProcessor binary = r.binarize(dial, type, 1);
+		return new Dial(hands, binary.getWidth(), binary.getHeight(), (byte[]) binary.getPixels());
+	}
+	
+	
+	
+	/** Reads the digits of a dial.
+	 * @param dial - the dial extracted by getDial.
+	 * @param type - type of the meter the dial was extracted from.
+	 * @return The digits and the index read.
+	 */
+	public Reading readDigits(Dial dial, TypeSpec type) {
+		Recognizer r = recognizer();
+		ImageProcessor ip = dial.processor();
+		ResultsTable blobs = r.findBlob(ip, 40);
+		List<int[]> order = r.preferredOrder(blobs);
+		int count = r.countCharacters(blobs, order);
+		int length = count*type.getCharWidth()*type.getCharHeight();
+		ScratchBuffers scratch = r.getScratchBuffers();
+		double[] features = scratch == null ? new double[length] : scratch.doubles(ScratchBuffers.FEATURES, length);
+		r.getFeatures(ip, blobs, type, order, features, 0);
+		DigitScores scores = r.getScores(features, count, type, order);
+		int index = r.digits2int(scores.getDigits(), order, blobs);
+		return new Reading(dial, scores, index);
+	}
+	
+	
+	
+	/** Reads the digits of several dials of the same meter type, classifying the images of digits of all the dials together.
+	 * Gives the same readings as readDigits(dial, type) for each dial.
+	 * @param dials - the dials extracted by getDial.
+	 * @param type - type of the meters the dials were extracted from.
+	 * @param failures - array in which the exception thrown by the reading of each dial is written, null if it was read.
+	 * @return The digits and the index read on each dial, null for the dials that could not be read.
+	 */
+	public Reading[] readDigits(Dial[] dials, TypeSpec type, RuntimeException[] failures) {
+		Recognizer r = recognizer();
+		int n = dials.length;
+		ResultsTable[] blobs = new ResultsTable[n];
+		List<List<int[]>> orders = new ArrayList<List<int[]>>(n);
+		int[] counts = new int[n];
+		int total = 0;
+		for (int p=0;p<n;p++) {
+			failures[p] = null;
+			orders.add(null);
+			try {
+				blobs[p] = r.findBlob(dials[p].processor(), 40);
+				orders.set(p, r.preferredOrder(blobs[p]));
+				counts[p] = r.countCharacters(blobs[p], orders.get(p));
+				total += counts[p];
+			} catch (RuntimeException e) {
+				failures[p] = e;
+				orders.set(p, null);
+			}
+		}
+		
+		int size = type.getCharWidth()*type.getCharHeight();
+		ScratchBuffers scratch = r.getScratchBuffers();
+		double[] features = scratch == null ? new double[total*size] : scratch.doubles(ScratchBuffers.FEATURES, total*size);
+		int offset = 0;
+		for (int p=0;p<n;p++) {
+			if (failures[p] == null) {
+				try {
+					r.getFeatures(dials[p].processor(), blobs[p], type, orders.get(p), features, offset);
+				} catch (RuntimeException e) {
+					failures[p] = e;
+					orders.set(p, null);
+				}
+			}
+			offset += counts[p]*size;
+		}
+		
+		DigitScores[] scores = r.getScores(features, counts, type, orders);
+		Reading[] res = new Reading[n];
+		for (int p=0;p<n;p++) {
+			if (failures[p] != null) continue;
+			try {
+				int index = r.digits2int(scores[p].getDigits(), orders.get(p), blobs[p]);
+				res[p] = new Reading(dials[p], scores[p], index);
+			} catch (RuntimeException e) {
+				failures[p] = e;
+			}
+		}
+		return res;
+	}
+	
+	
+	
+	/** Runs the three stages on a picture in the calling thread.
+	 * @param picture - color picture of a meter.
+	 * @param type - type of the meter on the picture.
+	 * @return The digits and the index read.
+	 */
+	public Reading read(ImageProcessor picture, TypeSpec type) {
+		HandAssignment hands = findHands(picture);
+		return readDigits(getDial(picture, hands, type), type);
+	}
+	
+	
+	
+	private Recognizer recognizer() {
+		Recognizer r = new Recognizer();
+		if (useScratchBuffers) {
+			r.setScratchBuffers(ScratchBuffers.get());
+		}
+		return r;
+	}
+}
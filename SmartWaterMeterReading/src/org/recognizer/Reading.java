@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+/**
+ * This class contains the result of the reading of a picture: the dial the digits were read on, the digits with their distances
+ * to the templates of the meter type and the index. It does not change once created, so that it can be handed from a thread
+ * to another.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public final class Reading {
+	
+	private final Dial dial;
+	private final DigitScores scores;
+	private final int index;
+	
+	
+	
+	/**
+	 * @param dial - the dial the digits were read on.
+	 * @param scores - the digits read, in the order of the digits on the picture.
+	 * @param index - the index of the meter.
+	 */
+	public Reading(Dial dial, DigitScores scores, int index) {
+		this.dial = dial;
+		this.scores = scores;
+		this.index = index;
+	}
+	
+	
+	
+	public Dial getDial() {
+		return dial;
+	}
+	
+	
+	
+	public HandAssignment getHands() {
+		return dial.getHands();
+	}
+	
+	
+	
+	/**
+	 * @return The digits read with their distances to the templates of the meter type.
+	 */
+	public DigitScores getScores() {
+		return scores;
+	}
+	
+	
+	
+	public int getIndex() {
+		return index;
+	}
+}
@@ -28,22 +28,17 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
-import org.encog.mathutil.matrices.Matrix;
 import org.encog.ml.data.MLData;
 import org.encog.ml.data.MLDataPair;
 import org.encog.ml.data.MLDataSet;
 import org.encog.ml.data.basic.BasicMLData;
 import org.encog.ml.data.basic.BasicMLDataSet;
-import org.encog.neural.som.SOM;
-import org.encog.neural.som.training.basic.BestMatchingUnit;
 
-import ij.ImagePlus;
 import ij.ImageStack;
 import ij.gui.Roi;
-import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
 import ij.process.Blitter;
+import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 
@@ -61,6 +56,8 @@ public class Recognizer {
 	private int THOUSANDTH = -1;
 	private int HUNDREDTH = -1;
 	
+	private ScratchBuffers scratch;
+	
 	
 	public int getMIDDLE() {
 		return MIDDLE;
@@ -92,50 +89,68 @@ public class Recognizer {
 
 
 
+	public ScratchBuffers getScratchBuffers() {
+		return scratch;
+	}
+
+
+
+	/**
+	 * @param scratch - buffers that findRed, locateRed, findBlob, getDial and binarize borrow their arrays from instead of
+	 * allocating them, or null to allocate them. The images returned by these methods are then overwritten by the next picture
+	 * read with the same buffers.
+	 */
+	public void setScratchBuffers(ScratchBuffers scratch) {
+		this.scratch = scratch;
+	}
+
+
+
 	/** Searches for red pixels.
+	 * The test is done by RedMask in a single pass on the RGB pixels.
 	 * @param ip - the image to process.
 	 * @return A binary image with red pixels set to 255 and non red ones to 0.
 	 */
 	public ImageProcessor findRed(ImageProcessor ip) {
+		return findRed(ip, 1);
+	}
+	
+	
+	
+	/** Searches for red pixels with several threads.
+	 * @param ip - the image to process.
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @return A binary image with red pixels set to 255 and non red ones to 0.
+	 */
+	public ImageProcessor findRed(ImageProcessor ip, int parallelism) {
 		if(ip.isGrayscale()) {
 			return null;
 		}
 		
-		ImageStack is = ((ColorProcessor) ip).getHSBStack();
-		ImageProcessor ip2 = is.getProcessor(1);
-		float[][] h = ip2.getFloatArray();
-		ip2 = is.getProcessor(2);
-		float[][] s = ip2.getFloatArray();
-		ip2 = is.getProcessor(3);
-		float[][] v = ip2.getFloatArray();
-		
-		for(int x=0;x<ip.getWidth();x++) {
-			for(int y=0;y<ip.getHeight();y++) {
-				h[x][y] /= 255.0;
-				s[x][y] /= 255.0;
-				v[x][y] /= 255.0;
-				double pix = h[x][y] - 0.68;
-				pix = Math.max(pix, 0.035 - h[x][y]);
-				double ms = 0.13;
-				pix = Math.min(pix, s[x][y] - ms);
-				double mv1 = 0.35, mv2 = 0.7;
-				double p = (mv1 - mv2)/(1 - ms);
-				pix = Math.min(pix, v[x][y] - (mv1 - p) - p*s[x][y]);
-				double tmp = 0.06 - h[x][y];
-				tmp = Math.min(tmp, s[x][y] - 0.85);
-				tmp = Math.min(tmp,  v[x][y] - 0.75);
-				pix = Math.max(pix,  tmp);
-				if (pix > 0.001) {
-					pix = 1.0;
-				}
-				
-				ip2.putPixelValue(x, y, pix*255);
-			}
+		int[] rgb = (int[]) ((ColorProcessor) ip).getPixels();
+		byte[] mask = scratch == null ? null : scratch.bytePixels(ScratchBuffers.RED_MASK, ip.getWidth()*ip.getHeight());
+		mask = RedMask.compute(rgb, ip.getWidth(), ip.getHeight(), mask, parallelism);
+		return new ByteProcessor(ip.getWidth(), ip.getHeight(), mask, null);
+	}
+	
+	
+	
+	/** Searches for red pixels around the red blobs of the image only. The blobs are first located on an image reduced by 'factor'
+	 * in both directions, then red pixels are searched at full resolution in windows around them (see RedMask.computeCoarseToFine).
+	 * The result can be used as the result of findRed by findBlob, treatBlobs and getDial.
+	 * @param ip - the image to process.
+	 * @param factor - reduction factor of the first pass. With a factor of 1, this is the same as findRed.
+	 * @param minArea - the minimal area of the blobs that will be analyzed by findBlob.
+	 * @return A binary image with red pixels of the windows set to 255 and all other pixels set to 0.
+	 */
+	public ImageProcessor locateRed(ImageProcessor ip, int factor, int minArea) {
+		if(ip.isGrayscale()) {
+			return null;
 		}
 		
-		ip2 = ip2.convertToByte(false);
-		ip2.autoThreshold();
-		return ip2;
+		int[] rgb = (int[]) ((ColorProcessor) ip).getPixels();
+		byte[] mask = RedMask.computeCoarseToFine(rgb, ip.getWidth(), ip.getHeight(), factor, minArea, scratch);
+		return new ByteProcessor(ip.getWidth(), ip.getHeight(), mask, null);
 	}
 
 	
@@ -146,20 +161,21 @@ public class Recognizer {
 	 * @return A table describing the blobs of the image. Measured properties are area, centroid and bounding box.
 	 */
 	public ResultsTable findBlob(ImageProcessor ip, int minArea) {
-		ImageProcessor ip2 = (ImageProcessor) ip.clone();
-		ip2 = ip2.convertToByte(true);
-		ip2.invertLut();
-		ip2.setBackgroundValue(0);
-		ImagePlus im = new ImagePlus();
-		im.setProcessor(ip2);
-		
-		ResultsTable rt = new ResultsTable();
-		ParticleAnalyzer pa = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE,
-				Measurements.AREA + Measurements.CENTROID + Measurements.RECT,
-				rt, minArea, Double.MAX_VALUE);
-		
-		pa.analyze(im);
-		return rt;
+		return findBlobs(ip, minArea).toResultsTable();
+	}
+	
+	
+	
+	/**	Finds and measures blobs on a binary image without building a ResultsTable.
+	 * @param ip - the image to process. Pixels of value 255 belong to the blobs.
+	 * @param minArea - the minimal area a blob must have to be analyzed.
+	 * @return The blobs of the image, in the same order as the rows of the table returned by findBlob.
+	 */
+	public Blobs findBlobs(ImageProcessor ip, int minArea) {
+		if (!(ip instanceof ByteProcessor)) {
+			ip = ip.convertToByte(true);
+		}
+		return Blobs.find((byte[]) ip.getPixels(), ip.getWidth(), ip.getHeight(), minArea, scratch);
 	}
 	
 	
@@ -173,6 +189,28 @@ public class Recognizer {
 	 * of the center of the button.
 	 */
 	public ResultsTable treatBlobs(ImageProcessor ip, ResultsTable blobs) {
+		HandAssignment hands = assignHands(ip, blobs);
+		MIDDLE = hands.getMiddle();
+		TENTHOUSANDTH = hands.getTenthousandth();
+		TENTH = hands.getTenth();
+		THOUSANDTH = hands.getThousandth();
+		HUNDREDTH = hands.getHundredth();
+		
+		for (int i=0;i<5;i++) {
+			blobs.setValue(ResultsTable.X_CENTER_OF_MASS, i, hands.getX(i));
+			blobs.setValue(ResultsTable.Y_CENTER_OF_MASS, i, hands.getY(i));
+		}
+		return blobs;
+	}
+	
+	
+	
+	/** Identifies the blobs and finds their center, like treatBlobs, without storing anything in the Recognizer nor in the table.
+	 * @param ip - the image to process.
+	 * @param blobs - table describing blobs of the image to process. Can be obtained unsing method findBlobs.
+	 * @return The line of each hand in the table and the center of each blob.
+	 */
+	public HandAssignment assignHands(ImageProcessor ip, ResultsTable blobs) {
 		if(blobs.getCounter()!=5) {
 			throw new IllegalArgumentException("Wrong number of blobs.");
 		}
@@ -184,12 +222,13 @@ public class Recognizer {
 			throw new IllegalArgumentException("Data of blobs do not exist.");
 		}
 		
+		int middle, tenthousandth, tenth, thousandth, hundredth = -1;
 		float[] dist = new float[10];
 		float[] dist2 = new float[10];
 		int[][] correspondingIndex = {{0,1}, {0,2}, {0,3}, {0,4}, {1,2}, {1,3}, {1,4}, {2,3}, {2,4}, {3,4}};
 		
 		float[] centroid_x = blobs.getColumn(ResultsTable.AREA);
-		MIDDLE = Searcher.findMax(centroid_x);
+		middle = Searcher.findMax(centroid_x);
 		
 		centroid_x = blobs.getColumn(ResultsTable.X_CENTROID);
 		float[] centroid_y = blobs.getColumn(ResultsTable.Y_CENTROID);
@@ -199,54 +238,54 @@ public class Recognizer {
 				dist[tmp] = (centroid_x[i] - centroid_x[j])*(centroid_x[i] - centroid_x[j]);
 				dist[tmp] += (centroid_y[i] - centroid_y[j])*(centroid_y[i] - centroid_y[j]);
 				dist2[tmp] = dist[tmp];
-				if (correspondingIndex[tmp][0] == MIDDLE || correspondingIndex[tmp][1] == MIDDLE) dist2[tmp] = 0;
+				if (correspondingIndex[tmp][0] == middle || correspondingIndex[tmp][1] == middle) dist2[tmp] = 0;
 				tmp++;
 			}
 		}
 		
 		tmp = Searcher.findMax(dist2);
 		int[] indices = correspondingIndex[tmp];
-		int[] tmp1 = {indices[0], MIDDLE};
+		int[] tmp1 = {indices[0], middle};
 		Arrays.sort(tmp1);
-		int[] tmp2 = {indices[1], MIDDLE};
+		int[] tmp2 = {indices[1], middle};
 		Arrays.sort(tmp2);
 		int key1 = Searcher.search(correspondingIndex, tmp1);
 		int key2 = Searcher.search(correspondingIndex, tmp2);
 		if (dist[key1] < dist[key2]) {
-			TENTHOUSANDTH = indices[0];
-			TENTH = indices[1];
+			tenthousandth = indices[0];
+			tenth = indices[1];
 		} else{
-			TENTHOUSANDTH = indices[1];
-			TENTH = indices[0];
+			tenthousandth = indices[1];
+			tenth = indices[0];
 		}
 		
 		for (int i=0;i<10;i++) {
 			dist2[i] = dist[i];
-			if ((correspondingIndex[i][0] != TENTHOUSANDTH && correspondingIndex[i][1] != TENTHOUSANDTH) || correspondingIndex[i][0]==MIDDLE || correspondingIndex[i][1]==MIDDLE || correspondingIndex[i][0]==TENTH || correspondingIndex[i][1]==TENTH) {
+			if ((correspondingIndex[i][0] != tenthousandth && correspondingIndex[i][1] != tenthousandth) || correspondingIndex[i][0]==middle || correspondingIndex[i][1]==middle || correspondingIndex[i][0]==tenth || correspondingIndex[i][1]==tenth) {
 				dist2[i] = Float.MAX_VALUE;
 			}
 		}
 		tmp = Searcher.findMin(dist2);
-		if (correspondingIndex[tmp][0] == TENTHOUSANDTH) {
-			THOUSANDTH = correspondingIndex[tmp][1];
-		} else THOUSANDTH = correspondingIndex[tmp][0];
+		if (correspondingIndex[tmp][0] == tenthousandth) {
+			thousandth = correspondingIndex[tmp][1];
+		} else thousandth = correspondingIndex[tmp][0];
 		
-		int[] res = {MIDDLE, TENTHOUSANDTH, TENTH, THOUSANDTH, HUNDREDTH};
+		int[] res = {middle, tenthousandth, tenth, thousandth};
 		for (int i=0;i<5;i++) {
 			if (Searcher.search(res, i) >= 0) {
 				continue;
 			} else {
-				HUNDREDTH = i;
+				hundredth = i;
 				break;
 			}
 		}
 		
+		double[] cx = new double[5];
+		double[] cy = new double[5];
 		for (int i=0;i<5;i++) {
-			if(i == MIDDLE) {
-				double x = blobs.getValueAsDouble(ResultsTable.X_CENTROID, i);
-				double y = blobs.getValueAsDouble(ResultsTable.Y_CENTROID, i);
-				blobs.setValue(ResultsTable.X_CENTER_OF_MASS, i,  x);
-				blobs.setValue(ResultsTable.Y_CENTER_OF_MASS, i,  y);
+			if(i == middle) {
+				cx[i] = blobs.getValueAsDouble(ResultsTable.X_CENTROID, i);
+				cy[i] = blobs.getValueAsDouble(ResultsTable.Y_CENTROID, i);
 			}
 			else {
 				double x =  blobs.getValueAsDouble(ResultsTable.ROI_X, i);
@@ -262,16 +301,16 @@ public class Recognizer {
 					int[] scan = Tools.numOfPixPerRow(ip, (int)x, (int)y, (int)width, (int)height);
 					int[] tmpdat = Searcher.findAllMax(scan);
 					double j = (Searcher.max(tmpdat) + Searcher.min(tmpdat))/2.0;
-					blobs.setValue(ResultsTable.X_CENTER_OF_MASS, i,  x+width/2.0);
-					blobs.setValue(ResultsTable.Y_CENTER_OF_MASS, i,  y+j);
+					cx[i] = x+width/2.0;
+					cy[i] = y+j;
 				} else if (rap >= 2) {
 					//aiguille plus ou moins horizontale
 					
 					int[] scan = Tools.numOfPixPerCol(ip, (int)x, (int)y, (int)width, (int)height);
 					int[] tmpdat = Searcher.findAllMax(scan);
 					double j = (Searcher.max(tmpdat) + Searcher.min(tmpdat))/2.0;
-					blobs.setValue(ResultsTable.X_CENTER_OF_MASS, i, x+j);
-					blobs.setValue(ResultsTable.Y_CENTER_OF_MASS, i,  y+height/2.0);
+					cx[i] = x+j;
+					cy[i] = y+height/2.0;
 				} else {
 					//aiguille oblique
 					
@@ -293,12 +332,12 @@ public class Recognizer {
 						j *= height/scan1.length;
 						k = j*rap;
 					}
-					blobs.setValue(ResultsTable.X_CENTER_OF_MASS, i, x+k);
-					blobs.setValue(ResultsTable.Y_CENTER_OF_MASS, i, y+j);
+					cx[i] = x+k;
+					cy[i] = y+j;
 				}
 			}
 		}
-		return blobs;
+		return new HandAssignment(middle, tenthousandth, tenth, thousandth, hundredth, cx, cy);
 	}
 	
 	
@@ -309,16 +348,43 @@ public class Recognizer {
 	 * @return An image of size DIAL_WIDTH x DIAL_HEIGHT representing the number dial.
 	 */
 	public ImageProcessor getDial(ImageProcessor ip, ResultsTable blobs, TypeSpec type) {
+		return getDial(ip, blobs, type, 1);
+	}
+	
+	
+	
+	/**	Gets the number dial in a water meter picture, computing the pixels of the dial with several threads.
+	 * @param ip - the image to process.
+	 * @param blobs - table containing data about some interest points. Can be obtained using method treatBlobs.
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @return An image of size DIAL_WIDTH x DIAL_HEIGHT representing the number dial.
+	 */
+	public ImageProcessor getDial(ImageProcessor ip, ResultsTable blobs, TypeSpec type, int parallelism) {
 		if(blobs.getCounter()!=5) {
 			throw new IllegalArgumentException("Wrong number of interest points.");
 		}
 		if(!blobs.columnExists(ResultsTable.X_CENTER_OF_MASS) || !blobs.columnExists(ResultsTable.Y_CENTER_OF_MASS)) {
 			throw new IllegalArgumentException("Coordinates of interest points do not exist.");
 		}
-		if(MIDDLE < 0 || TENTHOUSANDTH < 0 || TENTH < 0 || THOUSANDTH < 0 || HUNDREDTH < 0) {
-			throw new IllegalArgumentException("Interest points are not identified.");
-		}
 		
+		double[] x = new double[5];
+		double[] y = new double[5];
+		for (int i=0;i<5;i++) {
+			x[i] = blobs.getValueAsDouble(ResultsTable.X_CENTER_OF_MASS, i);
+			y[i] = blobs.getValueAsDouble(ResultsTable.Y_CENTER_OF_MASS, i);
+		}
+		return getDial(ip, new HandAssignment(MIDDLE, TENTHOUSANDTH, TENTH, THOUSANDTH, HUNDREDTH, x, y), type, parallelism);
+	}
+	
+	
+	
+	/**	Gets the number dial in a water meter picture from hands found by assignHands.
+	 * @param ip - the image to process.
+	 * @param hands - the hands found on the picture.
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @return An image of size DIAL_WIDTH x DIAL_HEIGHT representing the number dial.
+	 */
+	public ImageProcessor getDial(ImageProcessor ip, HandAssignment hands, TypeSpec type, int parallelism) {
 		/* TODO
 		 * Find a good method: MLS_AFFINE might be really efficient if there is enough interest
 		 * points (see what can be found with surf) but this is not satisfactory with only the five red buttons.
@@ -327,36 +393,45 @@ public class Recognizer {
 		 * Other implemented methods don't give satisfactory results.
 		 */
 		
-		double[][] p = {{type.getMiddleX(), type.getMiddleY()},
-				{type.getHundredthX(), type.getHundredthY()},
-				{type.getTenthousandthX(), type.getTenthousandthY()},
-				{type.getTenthX(), type.getTenthY()},
-				{type.getThousandthX(), type.getThousandthY()}};
-		double[][] q = {{blobs.getValueAsDouble(ResultsTable.X_CENTER_OF_MASS, MIDDLE), blobs.getValueAsDouble(ResultsTable.Y_CENTER_OF_MASS, MIDDLE)},
-				{blobs.getValueAsDouble(ResultsTable.X_CENTER_OF_MASS, HUNDREDTH), blobs.getValueAsDouble(ResultsTable.Y_CENTER_OF_MASS, HUNDREDTH)},
-				{blobs.getValueAsDouble(ResultsTable.X_CENTER_OF_MASS, TENTHOUSANDTH), blobs.getValueAsDouble(ResultsTable.Y_CENTER_OF_MASS, TENTHOUSANDTH)},
-				{blobs.getValueAsDouble(ResultsTable.X_CENTER_OF_MASS, TENTH), blobs.getValueAsDouble(ResultsTable.Y_CENTER_OF_MASS, TENTH)},
-				{blobs.getValueAsDouble(ResultsTable.X_CENTER_OF_MASS, THOUSANDTH), blobs.getValueAsDouble(ResultsTable.Y_CENTER_OF_MASS, THOUSANDTH)}};
+		double[][] p = getDialCorners(hands, type);
+		
+		double[] q0 = {0,0}, q1 = {type.getDialWidth(),0}, q2 = {0,type.getDialHeight()}, q3 = {type.getDialWidth(), type.getDialHeight()};
+		ImageProcessor ip2 = Tools.perspective(ip, p[0], p[1], p[2], p[3], q0, q1, q2, q3, parallelism, scratch);
+		
+		return ip2;
+	}
+	
+	
+	
+	/** Computes where the corners of the number dial are on a picture.
+	 * @param hands - the hands found on the picture.
+	 * @param type - type of the meter, which gives the position of the dial relative to the hands.
+	 * @return The top left, top right, bottom left and bottom right corners of the dial in the picture.
+	 */
+	public double[][] getDialCorners(HandAssignment hands, TypeSpec type) {
+		double[][] q = hands.getInterestPoints();
 		
 		
 		int flag = Tools.AFFINE_2D;
 		
+		/* The template side of the transform is computed once per meter type, the image side once per picture.
+		 */
+		FittedTransform transform = type.getTransform(flag).fit(q);
+		
 		double[] topleft = {type.getDialX(), type.getDialY()};
-		topleft = Tools.correspondingPoint(p, q, topleft, flag);
+		topleft = transform.map(topleft);
 		
 		double[] topright = {type.getDialX() + type.getDialWidth(),  type.getDialY()};
-		topright = Tools.correspondingPoint(p, q, topright, flag);
+		topright = transform.map(topright);
 		
 		double[] bottomleft = {type.getDialX(), type.getDialY() + type.getDialHeight()};
-		bottomleft = Tools.correspondingPoint(p, q, bottomleft, flag);
+		bottomleft = transform.map(bottomleft);
 		
 		double[] bottomright = {type.getDialX() + type.getDialWidth(), type.getDialY() + type.getDialHeight()};
-		bottomright = Tools.correspondingPoint(p, q, bottomright, flag);
+		bottomright = transform.map(bottomright);
 		
-		double[] q0 = {0,0}, q1 = {type.getDialWidth(),0}, q2 = {0,type.getDialHeight()}, q3 = {type.getDialWidth(), type.getDialHeight()};
-		ImageProcessor ip2 = Tools.perspective(ip, topleft, topright, bottomleft, bottomright, q0, q1, q2, q3);
-		
-		return ip2;
+		double[][] res = {topleft, topright, bottomleft, bottomright};
+		return res;
 	}
 	
 	
@@ -366,15 +441,86 @@ public class Recognizer {
 	 * @return An image in black and white.
 	 */
 	public ImageProcessor binarize(ImageProcessor ip) {
-		/* TODO
-		 * A true function.
+		return binarize(ip, 1);
+	}
+	
+	
+	
+	/** Transforms the dial of a meter to black and white with the binarization method of its type (see Binarizer).
+	 * @param ip - the image to process.
+	 * @param type - type of the meter, which gives the method. With null, the method is Binarizer.FIXED.
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @return An image in black and white.
+	 */
+	public ImageProcessor binarize(ImageProcessor ip, TypeSpec type, int parallelism) {
+		if (type == null || type.getBinarization() == Binarizer.FIXED) {
+			return binarize(ip, parallelism);
+		}
+		
+		final int width = ip.getWidth();
+		int height = ip.getHeight();
+		final byte[] gray;
+		if (ip instanceof ColorProcessor) {
+			final int[] rgb = (int[]) ip.getPixels();
+			gray = scratch == null ? new byte[width*height] : scratch.bytePixels(ScratchBuffers.GRAY_DIAL, width*height);
+			double[] w = ColorProcessor.getWeightingFactors();
+			final double rw = w[0], gw = w[1], bw = w[2];
+			RowStrips.run(height, parallelism, new RowStrips.Task() {
+				@Override
+				public void run(int y0, int y1) {
+					for (int i=y0*width, end=y1*width;i<end;i++) {
+						int c = rgb[i];
+						gray[i] = (byte) (((c&0xff0000)>>16)*rw + ((c&0xff00)>>8)*gw + (c&0xff)*bw + 0.5);
+					}
+				}
+			});
+		} else {
+			gray = (byte[]) ip.convertToByte(true).getPixels();
+		}
+		
+		byte[] res = scratch == null ? new byte[width*height] : scratch.bytePixels(ScratchBuffers.BINARY_DIAL, width*height);
+		Binarizer.binarize(gray, width, height, type.getBinarization(), type.getBinarizationWindow(), type.getBinarizationK(), res,
+				parallelism, scratch);
+		return new ByteProcessor(width, height, res, null);
+	}
+	
+	
+	
+	/** Transforms the image to black and white with several threads.
+	 * @param ip - the image to process.
+	 * @param parallelism - number of threads to use (see RowStrips). Only used for RGB images.
+	 * @return An image in black and white.
+	 */
+	public ImageProcessor binarize(ImageProcessor ip, int parallelism) {
+		/* Fixed level: see binarize(ip, type, parallelism) for the adaptive methods.
 		 */
-		ImageProcessor ip2 = (ImageProcessor) ip.clone();
+		final int level = Binarizer.LEVEL;
 		
-		ip2 = ip2.convertToByte(true);
-		ip2.threshold(120);
+		if (!(ip instanceof ColorProcessor)) {
+			ImageProcessor ip2 = (ImageProcessor) ip.clone();
+			ip2 = ip2.convertToByte(true);
+			ip2.threshold(level);
+			return ip2;
+		}
 		
-		return ip2;
+		/* Same as convertToByte(true) followed by threshold(level), without the intermediate gray image.
+		 */
+		final int width = ip.getWidth();
+		final int[] rgb = (int[]) ip.getPixels();
+		final byte[] res = scratch == null ? new byte[width*ip.getHeight()] : scratch.bytePixels(ScratchBuffers.BINARY_DIAL, width*ip.getHeight());
+		double[] w = ColorProcessor.getWeightingFactors();
+		final double rw = w[0], gw = w[1], bw = w[2];
+		RowStrips.run(ip.getHeight(), parallelism, new RowStrips.Task() {
+			@Override
+			public void run(int y0, int y1) {
+				for (int i=y0*width, end=y1*width;i<end;i++) {
+					int c = rgb[i];
+					int gray = (int) (((c&0xff0000)>>16)*rw + ((c&0xff00)>>8)*gw + (c&0xff)*bw + 0.5) & 0xff;
+					res[i] = gray > level ? (byte) 255 : 0;
+				}
+			}
+		});
+		return new ByteProcessor(width, ip.getHeight(), res, null);
 	}
 	
 	
@@ -492,6 +638,157 @@ public class Recognizer {
 	
 	
 	
+	/** Counts the images of characters that getCharacters() and getFeatures() separate out.
+	 * @param blobs - data about individual characters.
+	 * @param order - list relating the order of the blobs and the human reading order (see preferredOrder()).
+	 * @return The number of images of characters.
+	 */
+	public int countCharacters(ResultsTable blobs, List<int[]> order) {
+		int res = 0;
+		for (int k=0;k<order.size();k++) {
+			if (order.get(k).length == 1) {
+				res++;
+			} else if (order.get(k).length == 2) {
+				int height = (int) blobs.getValueAsDouble(ResultsTable.ROI_HEIGHT, order.get(k)[0]);
+				int height2 = (int) blobs.getValueAsDouble(ResultsTable.ROI_HEIGHT, order.get(k)[1]);
+				res += (height < height2*0.1 || height2 < height*0.1) ? 1 : 2;
+			}
+		}
+		return res;
+	}
+	
+	
+	
+	/** Separates out characters directly in the format used by TemplateClassifier: gives the same values as getCharacters()
+	 * followed by imageStack2MLDataSet() and mlDataSet2Inputs(), without creating the images and the set.
+	 * @param ip - binary image containing a whole sentence or word (see binarize()).
+	 * @param blobs - data about individual characters.
+	 * @param type - type of the water meter, which gives the size of the images of characters.
+	 * @param order - list relating the order of the blobs and the human reading order (see preferredOrder()).
+	 * @return The images of characters, one after the other.
+	 */
+	public double[] getFeatures(ImageProcessor ip, ResultsTable blobs, TypeSpec type, List<int[]> order) {
+		double[] res = new double[countCharacters(blobs, order)*type.getCharWidth()*type.getCharHeight()];
+		getFeatures(ip, blobs, type, order, res, 0);
+		return res;
+	}
+	
+	
+	
+	/** Separates out characters like getFeatures(ip, blobs, type, order), in a given buffer, so that the characters of several
+	 * images can be written one after the other in the same buffer.
+	 * @param ip - binary image containing a whole sentence or word (see binarize()).
+	 * @param blobs - data about individual characters.
+	 * @param type - type of the water meter, which gives the size of the images of characters.
+	 * @param order - list relating the order of the blobs and the human reading order (see preferredOrder()).
+	 * @param features - buffer receiving the images of characters. Its size must be at least offset +
+	 * countCharacters(blobs, order)*charWidth*charHeight.
+	 * @param offset - position of the first character in 'features'.
+	 * @return The number of characters written.
+	 */
+	public int getFeatures(ImageProcessor ip, ResultsTable blobs, TypeSpec type, List<int[]> order, double[] features, int offset) {
+		if (!(ip instanceof ByteProcessor)) {
+			ip = ip.convertToByte(false);
+		}
+		int W = type.getCharWidth();
+		int H = type.getCharHeight();
+		int count = countCharacters(blobs, order);
+		if (offset < 0 || features.length < offset + count*W*H) {
+			throw new IllegalArgumentException("The buffer is too small for " + count + " characters.");
+		}
+		
+		int off = offset;
+		for (int k=0;k<order.size();k++) {
+			int i = order.get(k)[0];
+			
+			int x = (int) blobs.getValueAsDouble(ResultsTable.ROI_X, i);
+			int y = (int) blobs.getValueAsDouble(ResultsTable.ROI_Y, i);
+			int width = (int) blobs.getValueAsDouble(ResultsTable.ROI_WIDTH, i);
+			int height = (int) blobs.getValueAsDouble(ResultsTable.ROI_HEIGHT, i);
+			
+			if (order.get(k).length == 1) {
+				off = resample(ip, x, y, width, height, -1, -1, 0, features, off, W, H);
+				
+			} else if (order.get(k).length == 2) {
+				int j = order.get(k)[1];
+				int height2 = (int) blobs.getValueAsDouble(ResultsTable.ROI_HEIGHT, j);
+				
+				if (height < height2*0.1 || height2 < height*0.1) {
+					if (height2>height) {
+						height = height2;
+						x = (int) blobs.getValueAsDouble(ResultsTable.ROI_X, j);
+						y = (int) blobs.getValueAsDouble(ResultsTable.ROI_Y, j);
+						width = (int) blobs.getValueAsDouble(ResultsTable.ROI_WIDTH, j);
+					}
+					off = resample(ip, x, y, width, height, -1, -1, 0, features, off, W, H);
+					
+				} else {
+					int x2 = (int) blobs.getValueAsDouble(ResultsTable.ROI_X, j);
+					int y2 = (int) blobs.getValueAsDouble(ResultsTable.ROI_Y, j);
+					int width2 = (int) blobs.getValueAsDouble(ResultsTable.ROI_WIDTH, j);
+					off = resample(ip, x, y, width, height, width, height+height2, height2, features, off, W, H);
+					off = resample(ip, x2, y2, width2, height2, width2, height+height2, 0, features, off, W, H);
+				}
+			}
+		}
+		return count;
+	}
+	
+	
+	
+	/* Writes at 'off' the image of a character of size W x H. The character is the box (x, y, width, height) of the image, clipped
+	 * to the image, placed at the row 'top' of a black canvas of size canvasWidth x canvasHeight (the size of the clipped box if
+	 * canvasWidth is -1) and resized to W x H with the nearest neighbour, like ImageProcessor.crop() and resize() do.
+	 * Returns the position following the character.
+	 */
+	private static int resample(ImageProcessor ip, int x, int y, int width, int height, int canvasWidth, int canvasHeight, int top,
+			double[] features, int off, int W, int H) {
+		byte[] pixels = (byte[]) ip.getPixels();
+		int w = ip.getWidth();
+		int x0 = Math.max(x, 0);
+		int y0 = Math.max(y, 0);
+		int rw = Math.max(Math.min(x+width, w) - x0, 0);
+		int rh = Math.max(Math.min(y+height, ip.getHeight()) - y0, 0);
+		if (canvasWidth < 0) {
+			canvasWidth = rw;
+			canvasHeight = rh;
+		}
+		
+		if (canvasWidth == W && canvasHeight == H) {
+			for (int v=0;v<H;v++) {
+				int row = v - top;
+				for (int u=0;u<W;u++) {
+					features[off++] = (row >= 0 && row < rh && u < rw) ? pixels[(y0+row)*w + x0+u] & 0xff : 0;
+				}
+			}
+			return off;
+		}
+		
+		double srcCenterX = canvasWidth/2.0;
+		double srcCenterY = canvasHeight/2.0;
+		double dstCenterX = W/2.0;
+		double dstCenterY = H/2.0;
+		double xScale = (double) W/canvasWidth;
+		double yScale = (double) H/canvasHeight;
+		for (int v=0;v<H;v++) {
+			int row = (int) ((v-dstCenterY)/yScale + srcCenterY) - top;
+			if (row < 0 || row >= rh) {
+				for (int u=0;u<W;u++) {
+					features[off++] = 0;
+				}
+				continue;
+			}
+			int index = (y0+row)*w + x0;
+			for (int u=0;u<W;u++) {
+				int col = (int) ((u-dstCenterX)/xScale + srcCenterX);
+				features[off++] = col < rw ? pixels[index + col] & 0xff : 0;
+			}
+		}
+		return off;
+	}
+	
+	
+	
 	/** Transforms an ImageStack into an MLDataSet. Each slice of the ImageStack becomes a distinct item of the MLDataSet.
 	 * @param is
 	 * @return
@@ -515,6 +812,29 @@ public class Recognizer {
 	
 	
 	
+	/**
+	 * Copies the items of a set in a single array, in the format used by TemplateClassifier.
+	 * @param charsDataSet - set of images of numbers (see imageStack2MLDataSet).
+	 * @param inputCount - length of an item.
+	 * @return The items of the set, one after the other.
+	 */
+	public double[] mlDataSet2Inputs(MLDataSet charsDataSet, int inputCount) {
+		double[] res = new double[(int) charsDataSet.getRecordCount()*inputCount];
+		Iterator<MLDataPair> iter = charsDataSet.iterator();
+		int off = 0;
+		while (iter.hasNext()) {
+			double[] data = iter.next().getInput().getData();
+			if (data.length != inputCount) {
+				throw new IllegalArgumentException("Wrong size of item: " + data.length + " instead of " + inputCount + ".");
+			}
+			System.arraycopy(data, 0, res, off, inputCount);
+			off += inputCount;
+		}
+		return res;
+	}
+	
+	
+	
 	/**
 	 * Uses a SOM network to classify the images of numbers.
 	 * @param charsDataSet - each item of this set is the image of a number to recognize (in the format needed by the SOM network)
@@ -523,92 +843,130 @@ public class Recognizer {
 	 * @return an array containing the recognized numbers for all the image numbers in "charsDataSet".
 	 */
 	public int[] getNumbers(MLDataSet charsDataSet, TypeSpec type, List<int[]> order) {
-		SOM net = type.getNet();
-		
-		BestMatchingUnit bmu = new BestMatchingUnit(net);
-		Matrix W = net.getWeights();
-		int L = (int) charsDataSet.getRecordCount();
-		int[] res = new int[L];
-		Iterator<MLDataPair> iter = charsDataSet.iterator();
-		int i = 0;
-		while (iter.hasNext()) {
-			MLData input = iter.next().getInput();
-			res[i] = net.winner(input);
-			i++;
+		return getScores(charsDataSet, type, order).getDigits();
+	}
+	
+	
+	
+	/**
+	 * Similar as getNumbers() but returns also the distance of the recognized number to the model.
+	 * @param charsDataSet - each item of this set is the image of a number to recognize (in the format needed by the SOM network)
+	 * @param type - type of the water meter.
+	 * @param order - list relating the order of the images in "charsDataSet" and the human reading order.
+	 * @return for each image, the recognized number and its distance to the template of this number.
+	 */
+	public double[][] getNumbersAndDistances(MLDataSet charsDataSet, TypeSpec type, List<int[]> order) {
+		DigitScores scores = getScores(charsDataSet, type, order);
+		double[][] res = new double[scores.getCount()][2];
+		for (int i=0;i<res.length;i++) {
+			res[i][0] = scores.getDigit(i);
+			res[i][1] = scores.getDistance(i);
+		}
+		return res;
+	}
+	
+	
+	
+	/**
+	 * Classifies the images of numbers like getNumbers() and measures how sure each number is: its distance to the template of the
+	 * number recognized, and the nearest other template with its distance. Everything is computed in the pass that classifies the
+	 * images.
+	 * @param charsDataSet - each item of this set is the image of a number to recognize (in the format needed by the SOM network)
+	 * @param type - type of the water meter.
+	 * @param order - list relating the order of the images in "charsDataSet" and the human reading order.
+	 * @return the recognized numbers and their distances.
+	 */
+	public DigitScores getScores(MLDataSet charsDataSet, TypeSpec type, List<int[]> order) {
+		double[] inputs = mlDataSet2Inputs(charsDataSet, type.getClassifier().getInputCount());
+		return getScores(inputs, (int) charsDataSet.getRecordCount(), type, order);
+	}
+	
+	
+	
+	/**
+	 * Same as getScores(charsDataSet, type, order) for images of numbers in the format of TemplateClassifier.
+	 * @param inputs - images of numbers, one after the other (see getFeatures()).
+	 * @param L - number of images.
+	 * @param type - type of the water meter.
+	 * @param order - list relating the order of the images in "inputs" and the human reading order.
+	 * @return the recognized numbers and their distances.
+	 */
+	public DigitScores getScores(double[] inputs, int L, TypeSpec type, List<int[]> order) {
+		TemplateClassifier classifier = type.getClassifier();
+		int[] digits = new int[L];
+		double[] distances = new double[L];
+		int[] runnersUp = new int[L];
+		double[] runnerUpDistances = new double[L];
+		classifier.score(inputs, L, digits, distances, runnersUp, runnerUpDistances);
+		DigitScores res = new DigitScores(digits, distances, runnersUp, runnerUpDistances);
+		forceConsecutive(res, inputs, 0, classifier, order);
+		return res;
+	}
+	
+	
+	
+	/**
+	 * Same as getScores(inputs, L, type, order) for the images of numbers of several pictures, classified together in a single
+	 * call to the TemplateClassifier of the type.
+	 * @param inputs - images of numbers of all the pictures, one picture after the other.
+	 * @param counts - number of images of each picture.
+	 * @param type - type of the water meter of all the pictures.
+	 * @param orders - for each picture, list relating the order of its images in "inputs" and the human reading order, or null
+	 * to skip the picture.
+	 * @return the recognized numbers and their distances for each picture, null for the pictures skipped.
+	 */
+	public DigitScores[] getScores(double[] inputs, int[] counts, TypeSpec type, List<List<int[]>> orders) {
+		int total = 0;
+		for (int count:counts) {
+			total += count;
 		}
+		TemplateClassifier classifier = type.getClassifier();
+		int[] digits = new int[total];
+		double[] distances = new double[total];
+		int[] runnersUp = new int[total];
+		double[] runnerUpDistances = new double[total];
+		classifier.score(inputs, total, digits, distances, runnersUp, runnerUpDistances);
 		
-		/* TODO trouver une mthode plus intelligente pour forcer que deux
-		 * chiffres aligns verticalement soient conscutifs
-		 */
-		i = 0;
-		for (int k=0;k<order.size();k++) {
-			if (order.get(k).length == 2) {
-				int j = i+1;
-				MLData input1 = charsDataSet.get(i).getInput();
-				MLData input2 = charsDataSet.get(j).getInput();
-				double dist11 = bmu.calculateEuclideanDistance(W, input1, res[i]);
-				double dist12 = bmu.calculateEuclideanDistance(W,  input2, (res[i]+1)%10);
-				double dist21 = bmu.calculateEuclideanDistance(W, input1, (res[j]+9)%10);
-				double dist22 = bmu.calculateEuclideanDistance(W,  input2, res[j]);
-				if (dist11+dist12 < dist21+dist22) {
-					res[j] = (res[i]+1)%10;
-				} else {
-					res[i] = (res[j]+9)%10;
-				}
-				i++;
+		DigitScores[] res = new DigitScores[counts.length];
+		int base = 0;
+		for (int p=0;p<counts.length;p++) {
+			int end = base + counts[p];
+			if (orders.get(p) != null) {
+				res[p] = new DigitScores(Arrays.copyOfRange(digits, base, end), Arrays.copyOfRange(distances, base, end),
+						Arrays.copyOfRange(runnersUp, base, end), Arrays.copyOfRange(runnerUpDistances, base, end));
+				forceConsecutive(res[p], inputs, base, classifier, orders.get(p));
 			}
-			i++;
+			base = end;
 		}
 		return res;
 	}
 	
 	
 	
-	/**
-	 * Similar as getNumbers() but returns also the distance of the recognized number to the model.
-	 * @param charsDataSet
-	 * @param type
-	 * @param order
-	 * @return
+	/* Forces two digits aligned vertically to be consecutive, keeping the pair closest to the templates.
+	 * 'base' is the index in 'inputs' of the first image of the picture.
 	 */
-	public double[][] getNumbersAndDistances(MLDataSet charsDataSet, TypeSpec type, List<int[]> order) {
-		SOM net = type.getNet();
-		
-		BestMatchingUnit bmu = new BestMatchingUnit(net);
-		Matrix W = net.getWeights();
-		int L = (int) charsDataSet.getRecordCount();
-		double[][] res = new double[L][2];
-		Iterator<MLDataPair> iter = charsDataSet.iterator();
+	private static void forceConsecutive(DigitScores res, double[] inputs, int base, TemplateClassifier classifier, List<int[]> order) {
+		/* TODO trouver une mthode plus intelligente pour forcer que deux
+		 * chiffres aligns verticalement soient conscutifs
+		 */
 		int i = 0;
-		while (iter.hasNext()) {
-			MLData input = iter.next().getInput();
-			res[i][0] = net.winner(input);
-			res[i][1] = bmu.calculateEuclideanDistance(W,input,(int) res[i][1]);
-			i++;
-		}
-
-		i = 0;
 		for (int k=0;k<order.size();k++) {
 			if (order.get(k).length == 2) {
 				int j = i+1;
-				MLData input1 = charsDataSet.get(i).getInput();
-				MLData input2 = charsDataSet.get(j).getInput();
-				double dist11 = res[i][1];
-				double dist12 = bmu.calculateEuclideanDistance(W,  input2, (int) ((res[i][0]+1)%10));
-				double dist21 = bmu.calculateEuclideanDistance(W, input1, (int) ((res[j][0]+9)%10));
-				double dist22 = res[j][1];
+				double dist11 = res.getDistance(i);
+				double dist12 = classifier.distance(inputs, base+j, (res.getDigit(i)+1)%10);
+				double dist21 = classifier.distance(inputs, base+i, (res.getDigit(j)+9)%10);
+				double dist22 = res.getDistance(j);
 				if (dist11+dist12 < dist21+dist22) {
-					res[j][0] = (res[i][0]+1)%10;
-					res[j][1] = (dist11+dist12)/2;
+					res.force(j, (res.getDigit(i)+1)%10, dist12);
 				} else {
-					res[i][0] = (res[j][0]+9)%10;
-					res[i][1] = (dist21+dist22)/2;
+					res.force(i, (res.getDigit(j)+9)%10, dist21);
 				}
 				i++;
 			}
 			i++;
 		}
-		return res;
 	}
 	
 	
@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2013 pauline ruegg-reymond
+ * <pauline.ruegg.reymond@gmail.com>
+ * eauservice
+ * rue de Genve 36
+ * case postale 7416
+ * CH-1002 Lausanne
+ * 
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Abstract class to detect red pixels in an RGB image.
+ * The rule is the one used by Recognizer.findRed: a pixel is red if its hue, saturation and brightness (quantized to 8 bits,
+ * as in the HSB stack of a ColorProcessor) satisfy the conditions of isRed(). Pixels are read once, row after row, from the
+ * packed RGB array and the result is written directly into a byte mask, without any intermediate image.
+ * 
+ * @author pauline ruegg-reymond
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public abstract class RedMask {
+	
+	/** Value of red pixels in the mask. */
+	public static final byte RED = (byte) 255;
+	
+	private static final double MS = 0.13;
+	private static final double MV1 = 0.35, MV2 = 0.7;
+	private static final double P = (MV1 - MV2)/(1 - MS);
+	
+	/** Values of the 8 bits HSB channels divided by 255, as float. */
+	private static final float[] NORM = new float[256];
+	static {
+		for (int i=0;i<256;i++) {
+			NORM[i] = (float) (i/255.0);
+		}
+	}
+	
+	
+	
+	/** Computes the mask of red pixels of an RGB image.
+	 * @param rgb - packed RGB pixels of the image, row after row.
+	 * @param width - width of the image.
+	 * @param height - height of the image.
+	 * @param mask - array to write the mask in, of length at least width*height. If null, a new array is allocated.
+	 * @return The mask: RED for red pixels, 0 for the others.
+	 */
+	public static byte[] compute(int[] rgb, int width, int height, byte[] mask) {
+		return compute(rgb, width, height, mask, 1);
+	}
+	
+	
+	
+	/** Computes the mask of red pixels of an RGB image, with several threads working on strips of rows.
+	 * @param rgb - packed RGB pixels of the image, row after row.
+	 * @param width - width of the image.
+	 * @param height - height of the image.
+	 * @param mask - array to write the mask in, of length at least width*height. If null, a new array is allocated.
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @return The mask: RED for red pixels, 0 for the others.
+	 */
+	public static byte[] compute(final int[] rgb, final int width, int height, byte[] mask, int parallelism) {
+		int n = width*height;
+		if (rgb.length < n) {
+			throw new IllegalArgumentException("rgb should have length width*height.");
+		}
+		if (mask == null) {
+			mask = new byte[n];
+		} else if (mask.length < n) {
+			throw new IllegalArgumentException("mask should have length width*height.");
+		}
+		
+		final byte[] res = mask;
+		RowStrips.run(height, parallelism, new RowStrips.Task() {
+			@Override
+			public void run(int y0, int y1) {
+				computeRows(rgb, width, res, y0, y1);
+			}
+		});
+		return res;
+	}
+	
+	
+	
+	/** Computes the mask of red pixels for some rows of an RGB image.
+	 * @param rgb - packed RGB pixels of the image, row after row.
+	 * @param width - width of the image.
+	 * @param mask - array to write the mask in.
+	 * @param y0 - first row.
+	 * @param y1 - row after the last one.
+	 */
+	public static void computeRows(int[] rgb, int width, byte[] mask, int y0, int y1) {
+		float[] hsb = new float[3];
+		for (int i=y0*width, end=y1*width;i<end;i++) {
+			mask[i] = isRed(rgb[i], hsb) ? RED : 0;
+		}
+	}
+	
+	
+	
+	/** Computes the mask of red pixels of an RGB image in two passes: red blobs are first searched on a reduced image, made of one
+	 * pixel out of factor x factor, then the mask is computed at full resolution only in windows around the blobs found.
+	 * A window is enlarged as long as red pixels touch its border, so that it contains the whole blob.
+	 * @param rgb - packed RGB pixels of the image, row after row.
+	 * @param width - width of the image.
+	 * @param height - height of the image.
+	 * @param factor - reduction factor of the first pass. With a factor of 1, the whole mask is computed.
+	 * @param minArea - minimal area of the blobs at full resolution. Blobs of the reduced image are kept if their area is at least
+	 * minArea/(factor*factor).
+	 * @return The mask: RED for red pixels in the windows, 0 for the other pixels.
+	 */
+	public static byte[] computeCoarseToFine(int[] rgb, int width, int height, int factor, int minArea) {
+		return computeCoarseToFine(rgb, width, height, factor, minArea, null);
+	}
+	
+	
+	
+	/** Computes the mask of red pixels of an RGB image in two passes like computeCoarseToFine(rgb, width, height, factor, minArea),
+	 * with the masks and the labels of the blobs kept in buffers of the reading.
+	 * @param rgb - packed RGB pixels of the image, row after row.
+	 * @param width - width of the image.
+	 * @param height - height of the image.
+	 * @param factor - reduction factor of the first pass. With a factor of 1, the whole mask is computed.
+	 * @param minArea - minimal area of the blobs at full resolution.
+	 * @param scratch - buffers to borrow the masks from (the returned mask is ScratchBuffers.RED_MASK), or null to allocate them.
+	 * @return The mask: RED for red pixels in the windows, 0 for the other pixels.
+	 */
+	public static byte[] computeCoarseToFine(int[] rgb, int width, int height, int factor, int minArea, ScratchBuffers scratch) {
+		byte[] mask = scratch == null ? null : scratch.bytePixels(ScratchBuffers.RED_MASK, width*height);
+		if (factor <= 1) {
+			return compute(rgb, width, height, mask);
+		}
+		if (rgb.length < width*height) {
+			throw new IllegalArgumentException("rgb should have length width*height.");
+		}
+		
+		/* First pass: the pixel at the center of each factor x factor cell.
+		 */
+		int cw = (width + factor - 1)/factor;
+		int ch = (height + factor - 1)/factor;
+		byte[] coarse = scratch == null ? new byte[cw*ch] : scratch.bytes(ScratchBuffers.COARSE_MASK, cw*ch);
+		float[] hsb = new float[3];
+		for (int j=0;j<ch;j++) {
+			int y = Math.min(j*factor + factor/2, height - 1);
+			for (int i=0;i<cw;i++) {
+				int x = Math.min(i*factor + factor/2, width - 1);
+				coarse[j*cw+i] = isRed(rgb[y*width+x], hsb) ? RED : 0;
+			}
+		}
+		Blobs blobs = Blobs.find(coarse, cw, ch, Math.max(1, minArea/(factor*factor)), scratch);
+		
+		/* Second pass: full resolution, in a window of one more cell on each side of each blob.
+		 */
+		if (mask == null) {
+			mask = new byte[width*height];
+		} else {
+			Arrays.fill(mask, (byte) 0);
+		}
+		for (int b=0;b<blobs.getCount();b++) {
+			int x0 = Math.max(0, (blobs.getX(b) - 1)*factor);
+			int y0 = Math.max(0, (blobs.getY(b) - 1)*factor);
+			int x1 = Math.min(width, (blobs.getX(b) + blobs.getWidth(b) + 1)*factor);
+			int y1 = Math.min(height, (blobs.getY(b) + blobs.getHeight(b) + 1)*factor);
+			
+			while (true) {
+				computeRegion(rgb, width, mask, x0, y0, x1, y1);
+				int nx0 = x0, ny0 = y0, nx1 = x1, ny1 = y1;
+				if (x0 > 0 && hasRed(mask, width, x0, y0, x0+1, y1)) nx0 = Math.max(0, x0 - 2*factor);
+				if (y0 > 0 && hasRed(mask, width, x0, y0, x1, y0+1)) ny0 = Math.max(0, y0 - 2*factor);
+				if (x1 < width && hasRed(mask, width, x1-1, y0, x1, y1)) nx1 = Math.min(width, x1 + 2*factor);
+				if (y1 < height && hasRed(mask, width, x0, y1-1, x1, y1)) ny1 = Math.min(height, y1 + 2*factor);
+				if (nx0 == x0 && ny0 == y0 && nx1 == x1 && ny1 == y1) break;
+				x0 = nx0;
+				y0 = ny0;
+				x1 = nx1;
+				y1 = ny1;
+			}
+		}
+		return mask;
+	}
+	
+	
+	
+	/** Computes the mask of red pixels in a rectangular region of an RGB image.
+	 * @param rgb - packed RGB pixels of the image, row after row.
+	 * @param width - width of the image.
+	 * @param mask - array to write the mask in.
+	 * @param x0 - first column.
+	 * @param y0 - first row.
+	 * @param x1 - column after the last one.
+	 * @param y1 - row after the last one.
+	 */
+	public static void computeRegion(int[] rgb, int width, byte[] mask, int x0, int y0, int x1, int y1) {
+		float[] hsb = new float[3];
+		for (int j=y0;j<y1;j++) {
+			for (int i=j*width+x0, end=j*width+x1;i<end;i++) {
+				mask[i] = isRed(rgb[i], hsb) ? RED : 0;
+			}
+		}
+	}
+	
+	
+	
+	private static boolean hasRed(byte[] mask, int width, int x0, int y0, int x1, int y1) {
+		for (int j=y0;j<y1;j++) {
+			for (int i=j*width+x0, end=j*width+x1;i<end;i++) {
+				if (mask[i] == RED) return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	
+	/** Tests whether a pixel is red.
+	 * @param c - packed RGB value of the pixel.
+	 * @param hsb - array of length 3 used to compute hue, saturation and brightness.
+	 * @return true if the pixel is red.
+	 */
+	public static boolean isRed(int c, float[] hsb) {
+		int r = (c&0xff0000)>>16;
+		int g = (c&0xff00)>>8;
+		int b = c&0xff;
+		
+		/* Both conditions of the rule need a saturation greater than 0.13: 
+		 * pixels with saturation at most 1/8 cannot be red.
+		 */
+		int cmax = Math.max(r, Math.max(g, b));
+		int cmin = Math.min(r, Math.min(g, b));
+		if ((cmax - cmin)*8 <= cmax) return false;
+		
+		Color.RGBtoHSB(r, g, b, hsb);
+		float h = NORM[(int) (hsb[0]*255.0)];
+		float s = NORM[(int) (hsb[1]*255.0)];
+		float v = NORM[(int) (hsb[2]*255.0)];
+		
+		double pix = h - 0.68;
+		pix = Math.max(pix, 0.035 - h);
+		pix = Math.min(pix, s - MS);
+		pix = Math.min(pix, v - (MV1 - P) - P*s);
+		double tmp = 0.06 - h;
+		tmp = Math.min(tmp, s - 0.85);
+		tmp = Math.min(tmp,  v - 0.75);
+		pix = Math.max(pix,  tmp);
+		return pix > 0.001;
+	}
+}
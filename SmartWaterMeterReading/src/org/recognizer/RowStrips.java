@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Abstract class to run an operation on the rows of an image with several threads.
+ * The rows are split into strips that are processed by a fork-join pool. The operation must be independent for every row:
+ * the result is then the same as with a single thread, whatever the parallelism.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public abstract class RowStrips {
+	
+	/** Minimal number of rows of a strip. */
+	public static final int MIN_ROWS = 16;
+	
+	/** Number of strips per thread, so that threads finishing early can help the others. */
+	private static final int STRIPS_PER_THREAD = 4;
+	
+	private static ConcurrentHashMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+	
+	
+	
+	/**
+	 * Operation on a strip of rows.
+	 */
+	public interface Task {
+		
+		/** Processes rows y0 (included) to y1 (excluded).
+		 * @param y0 - first row.
+		 * @param y1 - row after the last one.
+		 */
+		public void run(int y0, int y1);
+	}
+	
+	
+	
+	/** Runs an operation on all the rows of an image.
+	 * @param height - number of rows.
+	 * @param parallelism - number of threads to use. With 1 (or less), the operation is run by the calling thread on all rows at once.
+	 * @param task - operation to run.
+	 */
+	public static void run(int height, int parallelism, Task task) {
+		if (parallelism <= 1 || height < 2*MIN_ROWS) {
+			task.run(0, height);
+			return;
+		}
+		int grain = Math.max(MIN_ROWS, (height + parallelism*STRIPS_PER_THREAD - 1)/(parallelism*STRIPS_PER_THREAD));
+		pool(parallelism).invoke(new Strip(task, 0, height, grain));
+	}
+	
+	
+	
+	/**
+	 * @return The number of processors available, i.e. the largest useful parallelism.
+	 */
+	public static int availableParallelism() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+	
+	
+	
+	private static ForkJoinPool pool(int parallelism) {
+		ForkJoinPool pool = pools.get(parallelism);
+		if (pool == null) {
+			ForkJoinPool newPool = new ForkJoinPool(parallelism);
+			pool = pools.putIfAbsent(parallelism, newPool);
+			if (pool == null) {
+				pool = newPool;
+			} else {
+				newPool.shutdown();
+			}
+		}
+		return pool;
+	}
+	
+	
+	
+	/**
+	 * A strip of rows, split in two halves until it has at most 'grain' rows.
+	 */
+	private static class Strip extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Task task;
+		private final int y0, y1, grain;
+		
+		private Strip(Task task, int y0, int y1, int grain) {
+			this.task = task;
+			this.y0 = y0;
+			this.y1 = y1;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute() {
+			if (y1 - y0 <= grain) {
+				task.run(y0, y1);
+				return;
+			}
+			int middle = (y0 + y1) >>> 1;
+			invokeAll(new Strip(task, y0, middle, grain), new Strip(task, middle, y1, grain));
+		}
+	}
+}
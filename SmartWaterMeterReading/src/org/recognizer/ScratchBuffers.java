@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+/**
+ * This class keeps the arrays used by the steps of the reading of a picture, so that the next pictures read by the same thread
+ * reuse them instead of allocating new ones. Each thread has its own buffers (see get()), and each kind of buffer has its slot.
+ * 
+ * Arrays given by bytes(), ints() and doubles() are at least as long as asked and grow to the largest length asked for their slot.
+ * Arrays given by bytePixels() and intPixels() back ImageJ images, which need arrays of the exact number of pixels: they are
+ * reused as long as the same length is asked for their slot, which is the case when the pictures come from the same camera and
+ * the dials from the same meter type. The content of an array is whatever the previous user left in it.
+ * 
+ * An array borrowed for a picture must not be used any more once the next picture is read with the same buffers.
+ * 
+ * @author SmartWaterMeterReading contributors
+ *
+ */
+public class ScratchBuffers {
+	
+	/** Mask of red pixels of a picture (bytePixels). */
+	public static final int RED_MASK = 0;
+	
+	/** Mask of red pixels of a reduced picture (bytes). */
+	public static final int COARSE_MASK = 1;
+	
+	/** Labels of two rows of a mask whose blobs are searched (ints). */
+	public static final int LABELS = 2;
+	
+	/** Dial extracted from a picture (intPixels). */
+	public static final int DIAL = 3;
+	
+	/** Binary image of the dial (bytePixels). */
+	public static final int BINARY_DIAL = 4;
+	
+	/** Images of the digits in the format of TemplateClassifier (doubles). */
+	public static final int FEATURES = 5;
+	
+	/** Gray image of the dial (bytePixels). */
+	public static final int GRAY_DIAL = 6;
+	
+	/** Integral images of an image binarized by a local adaptive method (doubles, see Binarizer). */
+	public static final int INTEGRAL = 7;
+	
+	/** Mask of red pixels of the preview of a picture decoded by regions (bytePixels, see MeterReader.getRegionOfInterest). */
+	public static final int PREVIEW_MASK = 8;
+	
+	private static final int SLOTS = 9;
+	
+	private static final ThreadLocal<ScratchBuffers> local = new ThreadLocal<ScratchBuffers>() {
+		@Override
+		protected ScratchBuffers initialValue() {
+			return new ScratchBuffers();
+		}
+	};
+	
+	private byte[][] bytes = new byte[SLOTS][];
+	private int[][] ints = new int[SLOTS][];
+	private double[][] doubles = new double[SLOTS][];
+	private long allocatedBytes = 0;
+	
+	
+	
+	/**
+	 * @return The buffers of the current thread.
+	 */
+	public static ScratchBuffers get() {
+		return local.get();
+	}
+	
+	
+	
+	/**
+	 * @param slot - kind of buffer.
+	 * @param minLength - minimal length.
+	 * @return An array of at least 'minLength' bytes.
+	 */
+	public byte[] bytes(int slot, int minLength) {
+		byte[] b = bytes[slot];
+		if (b == null || b.length < minLength) {
+			b = new byte[minLength];
+			bytes[slot] = b;
+			allocatedBytes += minLength;
+		}
+		return b;
+	}
+	
+	
+	
+	/**
+	 * @param slot - kind of buffer.
+	 * @param length - number of pixels.
+	 * @return An array of exactly 'length' bytes.
+	 */
+	public byte[] bytePixels(int slot, int length) {
+		byte[] b = bytes[slot];
+		if (b == null || b.length != length) {
+			b = new byte[length];
+			bytes[slot] = b;
+			allocatedBytes += length;
+		}
+		return b;
+	}
+	
+	
+	
+	/**
+	 * @param slot - kind of buffer.
+	 * @param minLength - minimal length.
+	 * @return An array of at least 'minLength' ints.
+	 */
+	public int[] ints(int slot, int minLength) {
+		int[] a = ints[slot];
+		if (a == null || a.length < minLength) {
+			a = new int[minLength];
+			ints[slot] = a;
+			allocatedBytes += 4L*minLength;
+		}
+		return a;
+	}
+	
+	
+	
+	/**
+	 * @param slot - kind of buffer.
+	 * @param length - number of pixels.
+	 * @return An array of exactly 'length' ints.
+	 */
+	public int[] intPixels(int slot, int length) {
+		int[] a = ints[slot];
+		if (a == null || a.length != length) {
+			a = new int[length];
+			ints[slot] = a;
+			allocatedBytes += 4L*length;
+		}
+		return a;
+	}
+	
+	
+	
+	/**
+	 * @param slot - kind of buffer.
+	 * @param minLength - minimal length.
+	 * @return An array of at least 'minLength' doubles.
+	 */
+	public double[] doubles(int slot, int minLength) {
+		double[] d = doubles[slot];
+		if (d == null || d.length < minLength) {
+			d = new double[minLength];
+			doubles[slot] = d;
+			allocatedBytes += 8L*minLength;
+		}
+		return d;
+	}
+	
+	
+	
+	/**
+	 * @return The number of bytes allocated for the arrays since the buffers were created, which stops growing once the buffers
+	 * fit the pictures read.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+	
+	
+	
+	/** Releases all the arrays.
+	 */
+	public void clear() {
+		for (int i=0;i<SLOTS;i++) {
+			bytes[i] = null;
+			ints[i] = null;
+			doubles[i] = null;
+		}
+	}
+}
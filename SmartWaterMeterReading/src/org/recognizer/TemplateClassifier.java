@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import org.encog.neural.som.SOM;
+
+/**
+ * This class classifies images of digits by searching the nearest template, like the SOM network of a meter type does, but on
+ * batches of vectors stored one after the other in a single array of doubles instead of one MLData at a time.
+ * 
+ * The templates are the weights of the network, copied once in a single array. For each vector, the Euclidean distance to every
+ * template is computed in the same order as the network does, and the winner is the first template with the smallest distance,
+ * so that the results are exactly the results of SOM.winner() and BestMatchingUnit.calculateEuclideanDistance().
+ * Instances are immutable and can be shared between threads.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class TemplateClassifier {
+	
+	private final SOM net;
+	private final int inputCount;
+	private final int templateCount;
+	private final double[] templates;
+	
+	
+	
+	/**
+	 * @param net - trained network of a meter type. Its weights must not be modified afterwards.
+	 */
+	public TemplateClassifier(SOM net) {
+		this.net = net;
+		inputCount = net.getInputCount();
+		templateCount = net.getOutputCount();
+		templates = new double[templateCount*inputCount];
+		double[][] W = net.getWeights().getData();
+		for (int t=0;t<templateCount;t++) {
+			System.arraycopy(W[t], 0, templates, t*inputCount, inputCount);
+		}
+	}
+	
+	
+	
+	/**
+	 * @return The length of the vectors to classify.
+	 */
+	public int getInputCount() {
+		return inputCount;
+	}
+	
+	
+	
+	/**
+	 * @return The number of templates (10 for digits).
+	 */
+	public int getTemplateCount() {
+		return templateCount;
+	}
+	
+	
+	
+	/**
+	 * @param net - network.
+	 * @return true if the classifier was built from this network.
+	 */
+	public boolean isBuiltFrom(SOM net) {
+		return this.net == net;
+	}
+	
+	
+	
+	/** Classifies a batch of vectors.
+	 * @param inputs - vectors to classify, one after the other (vector k starts at k*getInputCount()).
+	 * @param count - number of vectors.
+	 * @param winners - receives the index of the nearest template of each vector (-1 if no distance is a number).
+	 * @param distances - receives the distance of each vector to its nearest template. May be null.
+	 */
+	public void classify(double[] inputs, int count, int[] winners, double[] distances) {
+		score(inputs, count, winners, distances, null, null);
+	}
+	
+	
+	
+	/** Classifies a batch of vectors and finds the second nearest template of each vector in the same pass.
+	 * @param inputs - vectors to classify, one after the other (vector k starts at k*getInputCount()).
+	 * @param count - number of vectors.
+	 * @param winners - receives the index of the nearest template of each vector (-1 if no distance is a number).
+	 * @param distances - receives the distance of each vector to its nearest template. May be null.
+	 * @param runnersUp - receives the index of the nearest template other than the winner (-1 if there is none). May be null.
+	 * @param runnerUpDistances - receives the distance of each vector to its runner-up (positive infinity if there is none).
+	 * May be null.
+	 */
+	public void score(double[] inputs, int count, int[] winners, double[] distances, int[] runnersUp, double[] runnerUpDistances) {
+		if (inputs.length < count*inputCount) {
+			throw new IllegalArgumentException("Expected " + count + " vectors of " + inputCount + " values.");
+		}
+		final int n = inputCount;
+		final double[] T = templates;
+		for (int k=0;k<count;k++) {
+			int off = k*n;
+			double best = Double.POSITIVE_INFINITY;
+			double second = Double.POSITIVE_INFINITY;
+			int winner = -1;
+			int runnerUp = -1;
+			for (int t=0, toff=0;t<templateCount;t++, toff+=n) {
+				double sum = 0;
+				for (int i=0;i<n;i++) {
+					double d = inputs[off+i] - T[toff+i];
+					sum += d*d;
+				}
+				double dist = Math.sqrt(sum);
+				if (dist < best) {
+					second = best;
+					runnerUp = winner;
+					best = dist;
+					winner = t;
+				} else if (dist < second) {
+					second = dist;
+					runnerUp = t;
+				}
+			}
+			winners[k] = winner;
+			if (distances != null) distances[k] = best;
+			if (runnersUp != null) runnersUp[k] = runnerUp;
+			if (runnerUpDistances != null) runnerUpDistances[k] = second;
+		}
+	}
+	
+	
+	
+	/** Computes the distance between a vector and a template.
+	 * @param inputs - vectors, one after the other.
+	 * @param k - index of the vector.
+	 * @param template - index of the template.
+	 * @return The Euclidean distance between vector 'k' and template 'template'.
+	 */
+	public double distance(double[] inputs, int k, int template) {
+		int off = k*inputCount;
+		int toff = template*inputCount;
+		double sum = 0;
+		for (int i=0;i<inputCount;i++) {
+			double d = inputs[off+i] - templates[toff+i];
+			sum += d*d;
+		}
+		return Math.sqrt(sum);
+	}
+}
@@ -27,9 +27,12 @@ import ij.gui.PolygonRoi;
 import ij.gui.Roi;
 import ij.measure.ResultsTable;
 import ij.process.Blitter;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 
 import java.awt.Rectangle;
+import java.util.Arrays;
 
 /**
  * Abstract class to perform operations on images.
@@ -48,7 +51,7 @@ public abstract class Tools {
 	
 	
 	
-	/** Computes the deformation of one point.
+	/** Computes the deformation of one point. To map several points with the same interest points, use FittedTransform.
 	 * @param p - interest points in template image.
 	 * @param q - corresponding interest points in processed image.
 	 * @param u - point of template image we want to find in processed image.
@@ -59,144 +62,8 @@ public abstract class Tools {
 		if (p.length != q.length || p[0].length != 2 || q[0].length != 2 || u.length != 2){
 			throw new IllegalArgumentException("p and q don't have the same length or the points are not 2d points.");
 		}
-		if (flag < 0 || flag > MLS_RIGID) flag = 0;
 		
-		//System.out.println("u = " + Arrays.toString(u));
-		
-		double[] v = {u[0], u[1]};
-		
-		
-		if (flag == AFFINE_2D) {
-			
-			if (p.length < 3) throw new IllegalArgumentException("Wrong number of interest points");
-			
-			v[0] -= p[0][0];
-			v[1] -= p[0][1];
-			
-			double[][] A = {{p[1][0] - p[0][0], p[2][0] - p[0][0]}, {p[1][1] - p[0][1], p[2][1] - p[0][1]}};
-			A = LinAlg.inv2(A);
-			double[][] B = {{q[1][0] - q[0][0], q[2][0] - q[0][0]}, {q[1][1] - q[0][1], q[2][1] - q[0][1]}};
-			A = LinAlg.matMult(B, A);
-			
-			v = LinAlg.matVectMult(A, v);
-			
-			v[0] += q[0][0];
-			v[1] += q[0][1];
-			
-		} else if (flag == PERSPECTIVE) {
-			
-			if (p.length < 4) throw new IllegalArgumentException("Wrong number of interest points");
-			
-			double[][] A = {{p[0][0], p[1][0], p[2][0]},
-					{p[0][1], p[1][1], p[2][1]},
-					{1, 1, 1}};
-			
-			double[][] C = LinAlg.inv3(A);
-			double[] c = {p[3][0], p[3][1], 1};
-			c = LinAlg.matVectMult(C, c);
-			C = LinAlg.diag(c);
-			A = LinAlg.matMult(A,C);
-			
-			double[][] B = {{q[0][0], q[1][0], q[2][0]},
-					{q[0][1], q[1][1], q[2][1]},
-					{1, 1, 1}};
-			C = LinAlg.inv3(B);
-			c[0] = q[3][0];
-			c[1] = q[3][1];
-			c[2] = 1;
-			c = LinAlg.matVectMult(C, c);
-			C = LinAlg.diag(c);
-			B = LinAlg.matMult(B,C);
-			B = LinAlg.inv3(B);
-			
-			double[] w = {v[0], v[1], 1};
-			w = LinAlg.matVectMult(B, w);
-			w = LinAlg.matVectMult(A, w);
-			v[0] = w[0]/w[2];
-			v[1] = w[1]/w[2];
-			
-		} else if (flag >= MLS_AFFINE && flag <= MLS_RIGID) {
-			
-			double[] pStar = {0, 0};
-			double[] qStar = {0, 0};
-			double[] w = new double[p.length];
-			double tmp = 0;
-			for (int i=0;i<p.length;i++) {
-				//q[i] = LinAlg.addVect(q[i], transl);
-				//q[i] = LinAlg.scalVectMult(scale, q[i]);
-				w[i] = (p[i][0] - u[0])*(p[i][0] - u[0]) + (p[i][1] - u[1])*(p[i][1] - u[1]);
-				w[i] = 1/w[i];
-				pStar[0] += w[i]*p[i][0];
-				pStar[1] += w[i]*p[i][1];
-				qStar[0] += w[i]*q[i][0];
-				qStar[1] += w[i]*q[i][1];
-				tmp += w[i];
-			}
-			pStar = LinAlg.scalVectMult(1/tmp, pStar);
-			qStar = LinAlg.scalVectMult(1/tmp, qStar);
-	
-			double[][] M = {{0,0},{0,0}};
-			
-			if (flag == MLS_AFFINE) {
-				double[][] N = {{0,0},{0,0}};
-				for (int i=0;i<p.length;i++) {
-					double p0 = p[i][0] - pStar[0];
-					double p1 = p[i][1] - pStar[1];
-					double q0 = q[i][0] - qStar[0];
-					double q1 = q[i][1] - qStar[1];
-					double[][] T = {{w[i]*p0*q0, w[i]*p0*q1}, {w[i]*p1*q0, w[i]*p1*q1}};
-					M = LinAlg.addMat(M, T);
-					double[][] S = {{w[i]*p0*p0, w[i]*p1*p0}, {w[i]*p0*p1, w[i]*p1*p1}};
-					N = LinAlg.addMat(N, S);
-				}
-				
-				N = LinAlg.inv2(N);
-				M = LinAlg.matMult(M, N);
-			} else if (flag == MLS_SIMILARITY) {
-				tmp = 0;
-				for (int i=0;i<p.length;i++) {
-					double p0 = p[i][0] - pStar[0];
-					double p1 = p[i][1] - pStar[1];
-					double q0 = q[i][0] - qStar[0];
-					double q1 = q[i][1] - qStar[1];
-					double[][] T = {{w[i]*(p0*q0 + p1*q1), w[i]*(p0*q1 - p1*q0)}, {w[i]*(p1*q0 - p0*q1), w[i]*(p1*q1 + p0*q0)}};
-					M = LinAlg.addMat(M, T);
-					tmp += w[i]*(p0*p0 + p1*p1);
-				}
-				M = LinAlg.scalMatMult(1/tmp, M);
-			} else if (flag == MLS_RIGID) {
-				tmp = 0;
-				double tmp2 = 0;
-				for (int i=0;i<p.length;i++) {
-					double p0 = p[i][0] - pStar[0];
-					double p1 = p[i][1] - pStar[1];
-					double q0 = q[i][0] - qStar[0];
-					double q1 = q[i][1] - qStar[1];
-					double[][] T = {{w[i]*(p0*q0 + p1*q1), w[i]*(p0*q1 - p1*q0)}, {w[i]*(p1*q0 - p0*q1), w[i]*(p1*q1 + p0*q0)}};
-					M = LinAlg.addMat(M, T);
-					tmp += w[i]*(p0*q0 + p1*q1);
-					tmp2 += w[i]*(p1*q0 - p0*q1);
-				}
-				tmp *= tmp;
-				tmp2 *= tmp2;
-				tmp += tmp2;
-				tmp = Math.sqrt(tmp);
-				M = LinAlg.scalMatMult(1/tmp, M);
-			}
-				
-			
-			v[0] -= pStar[0];
-			v[1] -= pStar[1];
-			v = LinAlg.matVectMult(M, v);
-			v = LinAlg.addVect(v, qStar);
-			
-			//v = LinAlg.scalVectMult(1/scale, v);
-			//v[0] -= transl[0];
-			//v[1] -= transl[1];
-		}
-		
-		//System.out.println("v = " + Arrays.toString(v));
-		return v;
+		return new FittedTransform(p, flag).fit(q).map(u);
 	}
 	
 	
@@ -228,7 +95,7 @@ public abstract class Tools {
 	
 	
 	
-	/**	Counts the number of non zero pixels on each row of a region of an image.
+	/**	Counts the number of non zero pixels on each row of a region of an image. The image is read in place.
 	 * @param ip - image to treat.
 	 * @param x - x-coordinate of the region of interest.
 	 * @param y - y-coordinate of the region of interest.
@@ -237,17 +104,13 @@ public abstract class Tools {
 	 * @return The number of non zero pixels per row.
 	 */
 	public static int[] numOfPixPerRow(ImageProcessor ip, int x, int y, int width, int height) {
-		ImageProcessor ip2 = (ImageProcessor) ip.clone();
-		if (!ip2.isBinary() || ip2.isInvertedLut()) {
-			throw new IllegalArgumentException("Image should be binary.");
-		}
+		byte[] pixels = binaryPixels(ip, x, y, width, height);
+		int w = ip.getWidth();
 		
 		int[] data = new int[height];
 		for (int j=0;j<height;j++) {
-			int[] data2 = new int[width];
-			ip2.getRow(x, y+j, data2, width);
-			for (int k=0;k<width;k++) {
-				if (data2[k]>0) data[j]++;
+			for (int i=(y+j)*w+x, end=i+width;i<end;i++) {
+				if (pixels[i] != 0) data[j]++;
 			}
 		}
 		return data;
@@ -256,7 +119,7 @@ public abstract class Tools {
 	
 	
 	
-	/** Counts the number of non zero pixels on each column of a region of an image.
+	/** Counts the number of non zero pixels on each column of a region of an image. The image is read in place.
 	 * @param ip - image to treat.
 	 * @param x - x-coordinate of the region of interest.
 	 * @param y - y-coordinate of the region of interest.
@@ -265,17 +128,24 @@ public abstract class Tools {
 	 * @return The number of non zero pixels per column.
 	 */
 	public static int[] numOfPixPerCol(ImageProcessor ip, int x, int y, int width, int height) {
-		ImageProcessor ip2 = (ImageProcessor) ip.clone();
-		ip2.setRoi(x, y, width, height);
-		ip2 = ip2.crop();
-		ip2 = ip2.rotateRight();
-		return numOfPixPerRow(ip2,0,0,ip2.getWidth(),ip2.getHeight());
+		byte[] pixels = binaryPixels(ip, x, y, width, height);
+		int w = ip.getWidth();
+		
+		int[] data = new int[width];
+		for (int j=0;j<height;j++) {
+			for (int i=0, offset=(y+j)*w+x;i<width;i++) {
+				if (pixels[offset+i] != 0) data[i]++;
+			}
+		}
+		return data;
 	}
 	
 	
 	
 	
-	/**	Counts the number of non zero pixels on each parallel to a given line of a region of an image.
+	/**	Counts the number of non zero pixels on each parallel to a given line of a region of an image. The image is read in place.
+	 * The counts are the rows of the region rotated by rotate(region, angle, true): each pixel of the rotated region takes the value
+	 * of the nearest pixel of the region, so the result is the same as rotating the region and counting its rows.
 	 * @param ip - image to treat.
 	 * @param x - x-coordinate of the region of interest.
 	 * @param y - y-coordinate of the region of interest.
@@ -285,12 +155,82 @@ public abstract class Tools {
 	 * @return The number of non zero pixels per row.
 	 */
 	public static int[] numOfPixPerLine(ImageProcessor ip, int x, int y, int width, int height, double angle) {
-		ImageProcessor ip2 = (ImageProcessor) ip.clone();
-		ip2.setRoi(x, y, width, height);
-		ip2 = ip2.crop();
+		byte[] pixels = binaryPixels(ip, x, y, width, height);
+		int w = ip.getWidth();
+		
+		/* Size of the enlarged image and position of the region in it, as in rotate().
+		 */
+		double angle2 = angle*Math.PI/180;
+		double dstWidth = Math.abs(width*Math.cos(angle2));
+		dstWidth += Math.abs(height*Math.sin(angle2));
+		dstWidth = Math.max(Math.round(dstWidth), width);
+		double dstHeight = Math.abs(height*Math.cos(angle2));
+		dstHeight += Math.abs(width*Math.sin(angle2));
+		dstHeight = Math.max(Math.round(dstHeight), height);
+		int srcX = (int) Math.round(dstWidth/2.0 - width/2.0);
+		int srcY = (int) Math.round(dstHeight/2.0 - height/2.0);
+		int W = (int) dstWidth, H = (int) dstHeight;
 		
-		ip2 = rotate(ip2, angle, true);
-		return numOfPixPerRow(ip2, 0, 0, ip2.getWidth(), ip2.getHeight());
+		int[] data = new int[H];
+		if (angle%360 == 0) {
+			for (int j=0;j<height;j++) {
+				for (int i=(y+j)*w+x, end=i+width;i<end;i++) {
+					if (pixels[i] != 0) data[srcY+j]++;
+				}
+			}
+			return data;
+		}
+		
+		/* Nearest neighbour rotation around the center of the enlarged image, with the same arithmetic as ByteProcessor.rotate().
+		 * Pixels outside of the region are background pixels.
+		 */
+		double centerX = (W - 1)/2.0;
+		double centerY = (H - 1)/2.0;
+		double angleRadians = -angle/(180.0/Math.PI);
+		double ca = Math.cos(angleRadians);
+		double sa = Math.sin(angleRadians);
+		double tmp1 = centerY*sa - centerX*ca;
+		double tmp2 = -centerX*sa - centerY*ca;
+		for (int j=0;j<H;j++) {
+			double tmp3 = tmp1 - j*sa + centerX;
+			double tmp4 = tmp2 + j*ca + centerY;
+			for (int i=0;i<W;i++) {
+				double xs = i*ca + tmp3;
+				double ys = i*sa + tmp4;
+				if (xs >= -0.01 && xs < W && ys >= -0.01 && ys < H) {
+					int ixs = Math.min((int) (xs + 0.5), W - 1) - srcX;
+					int iys = Math.min((int) (ys + 0.5), H - 1) - srcY;
+					if (ixs >= 0 && ixs < width && iys >= 0 && iys < height && pixels[(y+iys)*w+x+ixs] != 0) {
+						data[j]++;
+					}
+				}
+			}
+		}
+		return data;
+	}
+	
+	
+	
+	/* Pixels of a binary image, after checking that the region of interest is in the image and contains only 0 and 255.
+	 */
+	private static byte[] binaryPixels(ImageProcessor ip, int x, int y, int width, int height) {
+		if (!(ip instanceof ByteProcessor) || ip.isInvertedLut()) {
+			throw new IllegalArgumentException("Image should be binary.");
+		}
+		if (x < 0 || y < 0 || width < 0 || height < 0 || x+width > ip.getWidth() || y+height > ip.getHeight()) {
+			throw new IllegalArgumentException("The region of interest is not in the image.");
+		}
+		
+		byte[] pixels = (byte[]) ip.getPixels();
+		int w = ip.getWidth();
+		for (int j=0;j<height;j++) {
+			for (int i=(y+j)*w+x, end=i+width;i<end;i++) {
+				if (pixels[i] != 0 && pixels[i] != (byte) 255) {
+					throw new IllegalArgumentException("Image should be binary.");
+				}
+			}
+		}
+		return pixels;
 	}
 	
 	
@@ -309,6 +249,46 @@ public abstract class Tools {
 	 * @return An image containing a bounding box of quadrilateral (q0, q1, q2, q3). Pixels outside the quadrilateral are not copied.
 	 */
 	public static ImageProcessor perspective(ImageProcessor ip, double[] p0, double[] p1, double[] p2, double[] p3, double[] q0, double[] q1, double[] q2, double[] q3) {
+		return perspective(ip, p0, p1, p2, p3, q0, q1, q2, q3, 1);
+	}
+	
+	
+	
+	/** Transforms a four-sided selection in an image into another quadilateral, computing the rows of the result with several threads.
+	 * @param ip - image to process.
+	 * @param p0 - coordinates of an edge of the four-sided selection in original image. maps to q0.
+	 * @param p1 - coordinates of an edge of the four-sided selection in original image. maps to q1.
+	 * @param p2 - coordinates of an edge of the four-sided selection in original image. maps to q2.
+	 * @param p3 - coordinates of an edge of the four-sided selection in original image. maps to q3.
+	 * @param q0 - coordinates of an edge of the quadrilateral in destination image. maps to p0.
+	 * @param q1 - coordinates of an edge of the quadrilateral in destination image. maps to p1.
+	 * @param q2 - coordinates of an edge of the quadrilateral in destination image. maps to p2.
+	 * @param q3 - coordinates of an edge of the quadrilateral in destination image. maps to p3.
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @return An image containing a bounding box of quadrilateral (q0, q1, q2, q3). Pixels outside the quadrilateral are not copied.
+	 */
+	public static ImageProcessor perspective(ImageProcessor ip, double[] p0, double[] p1, double[] p2, double[] p3, double[] q0, double[] q1, double[] q2, double[] q3, int parallelism) {
+		return perspective(ip, p0, p1, p2, p3, q0, q1, q2, q3, parallelism, null);
+	}
+	
+	
+	
+	/** Transforms a four-sided selection in an image into another quadilateral, computing the rows of the result with several threads.
+	 * The pixels of an RGB result are borrowed from buffers of the reading.
+	 * @param ip - image to process.
+	 * @param p0 - coordinates of an edge of the four-sided selection in original image. maps to q0.
+	 * @param p1 - coordinates of an edge of the four-sided selection in original image. maps to q1.
+	 * @param p2 - coordinates of an edge of the four-sided selection in original image. maps to q2.
+	 * @param p3 - coordinates of an edge of the four-sided selection in original image. maps to q3.
+	 * @param q0 - coordinates of an edge of the quadrilateral in destination image. maps to p0.
+	 * @param q1 - coordinates of an edge of the quadrilateral in destination image. maps to p1.
+	 * @param q2 - coordinates of an edge of the quadrilateral in destination image. maps to p2.
+	 * @param q3 - coordinates of an edge of the quadrilateral in destination image. maps to p3.
+	 * @param parallelism - number of threads to use (see RowStrips).
+	 * @param scratch - buffers to borrow the pixels of an RGB result from (ScratchBuffers.DIAL), or null to allocate them.
+	 * @return An image containing a bounding box of quadrilateral (q0, q1, q2, q3). Pixels outside the quadrilateral are not copied.
+	 */
+	public static ImageProcessor perspective(final ImageProcessor ip, double[] p0, double[] p1, double[] p2, double[] p3, double[] q0, double[] q1, double[] q2, double[] q3, int parallelism, ScratchBuffers scratch) {
 		if (p0.length != 2 || p1.length != 2 || p2.length != 2 || p3.length != 2 || q0.length != 2 || q1.length != 2 || q2.length != 2 || q3.length != 2) {
 			throw new IllegalArgumentException("p's and q's should have length 2.");
 		}
@@ -348,33 +328,94 @@ public abstract class Tools {
 		C = LinAlg.diag(c);
 		B = LinAlg.matMult(B,C);
 		B = LinAlg.inv3(B);
+		/* H maps a pixel of the destination image to the original image. Along a row, the homogeneous coordinates
+		 * change by the first column of H from one pixel to the next.
+		 */
+		final double[][] H = LinAlg.matMult(A, B);
 		
 		float[] xpoints = {(float) q0[0], (float) q1[0], (float) q3[0], (float) q2[0]};
 		float[] ypoints = {(float) q0[1], (float) q1[1], (float) q3[1], (float) q2[1]};
 		PolygonRoi roi = new PolygonRoi(xpoints, ypoints, 4, Roi.POLYGON);
-		roi.setLocation(0, 0);
-		Rectangle boundingRect = roi.getBounds();
-		ImageProcessor ip2 = ip.createProcessor(boundingRect.width,  boundingRect.height);
+		final Rectangle boundingRect = roi.getBounds();
+		final ImageProcessor ip2;
+		if (scratch != null && ip instanceof ColorProcessor) {
+			int[] pixels = scratch.intPixels(ScratchBuffers.DIAL, boundingRect.width*boundingRect.height);
+			Arrays.fill(pixels, 0);
+			ip2 = new ColorProcessor(boundingRect.width, boundingRect.height, pixels);
+			ip2.setInterpolationMethod(ip.getInterpolationMethod());
+		} else {
+			ip2 = ip.createProcessor(boundingRect.width,  boundingRect.height);
+		}
 		
-		for (int i=0;i<boundingRect.width;i++) {
-			for (int j=0;j<boundingRect.height;j++) {
-				if (roi.contains(i, j)) {
-					double[] v = {(double) i, (double) j, 1};
-					v = LinAlg.matVectMult(B, v);
-					v = LinAlg.matVectMult(A, v);
-					double pix0 = v[0]/v[2];
-					double pix1 = v[1]/v[2];
-					int color = ip.getPixelInterpolated(pix0, pix1);
-					ip2.putPixel(i, j, color);
+		/* Coordinates of the quadrilateral relative to its smallest coordinates, as used by roi.contains().
+		 */
+		float minX = Math.min(Math.min(xpoints[0], xpoints[1]), Math.min(xpoints[2], xpoints[3]));
+		float minY = Math.min(Math.min(ypoints[0], ypoints[1]), Math.min(ypoints[2], ypoints[3]));
+		final float[] xp = new float[4];
+		final float[] yp = new float[4];
+		for (int k=0;k<4;k++) {
+			xp[k] = xpoints[k] - minX;
+			yp[k] = ypoints[k] - minY;
+		}
+		
+		RowStrips.run(boundingRect.height, parallelism, new RowStrips.Task() {
+			@Override
+			public void run(int y0, int y1) {
+				float[] crossings = new float[4];
+				for (int j=y0;j<y1;j++) {
+					int n = rowCrossings(xp, yp, j, crossings);
+					for (int k=0;k+1<n;k+=2) {
+						int start = Math.max(0, (int) Math.ceil(crossings[k]));
+						int end = Math.min(boundingRect.width, (int) Math.ceil(crossings[k+1]));
+						if (start >= end) continue;
+						
+						double v0 = H[0][0]*start + H[0][1]*j + H[0][2];
+						double v1 = H[1][0]*start + H[1][1]*j + H[1][2];
+						double v2 = H[2][0]*start + H[2][1]*j + H[2][2];
+						for (int i=start;i<end;i++) {
+							int color = ip.getPixelInterpolated(v0/v2, v1/v2);
+							ip2.putPixel(i, j, color);
+							v0 += H[0][0];
+							v1 += H[1][0];
+							v2 += H[2][0];
+						}
+					}
 				}
 			}
-		}
+		});
 		
 		return ip2;
 	}
 	
 	
 	
+	/** Computes where a row crosses the edges of a polygon, with the same arithmetic as FloatPolygon.contains().
+	 * A pixel (i, y) is inside the polygon if crossings[k] <= i < crossings[k+1] for an even k.
+	 * @param xp - x-coordinates of the vertices of the polygon.
+	 * @param yp - y-coordinates of the vertices of the polygon.
+	 * @param y - row.
+	 * @param crossings - array to store the crossings in, sorted. Its length must be at least the number of vertices.
+	 * @return The number of crossings.
+	 */
+	static int rowCrossings(float[] xp, float[] yp, int y, float[] crossings) {
+		float fy = y;
+		int n = 0;
+		for (int i=0, j=xp.length-1;i<xp.length;j=i++) {
+			if ((yp[i] > fy) != (yp[j] > fy)) {
+				float c = (xp[j] - xp[i])*(fy - yp[i])/(yp[j] - yp[i]) + xp[i];
+				int k = n++;
+				while (k > 0 && crossings[k-1] > c) {
+					crossings[k] = crossings[k-1];
+					k--;
+				}
+				crossings[k] = c;
+			}
+		}
+		return n;
+	}
+	
+	
+	
 	
 	/** Rotates the image by an angle of 'angle' degrees clockwise.
 	 * @param ip - contains the image to treat
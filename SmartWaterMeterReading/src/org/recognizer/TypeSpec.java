@@ -57,6 +57,13 @@ public class TypeSpec implements Serializable {
 	
 	private SOM net;
 	
+	private int binarization;
+	private int binarizationWindow;
+	private double binarizationK;
+	
+	private transient volatile FittedTransform transform;
+	private transient volatile TemplateClassifier classifier;
+	
 	public double getDialWidth() {
 		return dialWidth;
 	}
@@ -159,4 +166,79 @@ public class TypeSpec implements Serializable {
 	public void setNet(SOM net) {
 		this.net = net;
 	}
+	/**
+	 * @return The method used to binarize the dial (see Binarizer). Binarizer.FIXED for the types created before it could be
+	 * chosen.
+	 */
+	public int getBinarization() {
+		return binarization;
+	}
+	public void setBinarization(int binarization) {
+		this.binarization = binarization;
+	}
+	/**
+	 * @return The size in pixels of the window of the adaptive binarization methods, 0 for the default size.
+	 */
+	public int getBinarizationWindow() {
+		return binarizationWindow;
+	}
+	public void setBinarizationWindow(int binarizationWindow) {
+		this.binarizationWindow = binarizationWindow;
+	}
+	/**
+	 * @return The parameter k (Sauvola) or t (Bradley) of the adaptive binarization methods, 0 for the default value.
+	 */
+	public double getBinarizationK() {
+		return binarizationK;
+	}
+	public void setBinarizationK(double binarizationK) {
+		this.binarizationK = binarizationK;
+	}
+	
+	
+	
+	/** Gets the templates of the network in the form used to classify batches of digits, built once and kept until the network
+	 * is replaced.
+	 * @return The classifier of the network of the type.
+	 */
+	public TemplateClassifier getClassifier() {
+		SOM n = net;
+		TemplateClassifier c = classifier;
+		if (c == null || !c.isBuiltFrom(n)) {
+			c = new TemplateClassifier(n);
+			classifier = c;
+		}
+		return c;
+	}
+	
+	
+	
+	/**
+	 * @return The interest points of the template in the order middle, hundredth, tenthousandth, tenth, thousandth.
+	 */
+	public double[][] getInterestPoints() {
+		double[][] p = {{middleX, middleY},
+				{hundredthX, hundredthY},
+				{tenthousandthX, tenthousandthY},
+				{tenthX, tenthY},
+				{thousandthX, thousandthY}};
+		return p;
+	}
+	
+	
+	
+	/** Gets the template side of the transform from the template to a picture, computed once and kept until the interest
+	 * points change.
+	 * @param flag - indicates the method (see Tools).
+	 * @return A transform to fit with the interest points found in a picture, in the order of getInterestPoints().
+	 */
+	public FittedTransform getTransform(int flag) {
+		double[][] p = getInterestPoints();
+		FittedTransform t = transform;
+		if (t == null || !t.hasTemplate(p, flag)) {
+			t = new FittedTransform(p, flag);
+			transform = t;
+		}
+		return t;
+	}
 }
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.encog.mathutil.matrices.Matrix;
+import org.encog.neural.som.SOM;
+
+/**
+ * Abstract class to store meter types in a compact binary format instead of Java serialization.
+ * 
+ * A file contains, in big-endian order:
+ * <ul>
+ * <li>the int MAGIC and the int version of the format,</li>
+ * <li>14 doubles: dialX, dialY, dialWidth, dialHeight, middleX, middleY, tenthX, tenthY, hundredthX, hundredthY, thousandthX,
+ * thousandthY, tenthousandthX and tenthousandthY,</li>
+ * <li>2 ints: charWidth and charHeight,</li>
+ * <li>since version 2, 2 ints and a double: the binarization method of the dial, the size of its window and its parameter k
+ * (see Binarizer). A file with an unknown method or a negative parameter is rejected when it is read. Files of version 1 are
+ * read with the method Binarizer.FIXED,</li>
+ * <li>2 ints: the number of inputs and the number of outputs of the SOM network, followed by its weights as doubles,
+ * one output after the other.</li>
+ * </ul>
+ * Files are read whole into a buffer on the heap, and closed before the meter type is decoded, so that they can be replaced or
+ * deleted while the meter type is in use.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public abstract class TypeSpecFormat {
+
+	/** First 4 bytes of a binary meter type ("SWMT"). */
+	public static final int MAGIC = 0x53574D54;
+
+	/** Version of the format written by write(). */
+	public static final int VERSION = 2;
+
+
+
+	/** Writes a meter type in binary format.
+	 * @param type - meter type to write. Its network must be set.
+	 * @param file - destination file.
+	 * @throws IOException
+	 */
+	public static void write(TypeSpec type, File file) throws IOException {
+		SOM net = type.getNet();
+		if (net == null) {
+			throw new IllegalArgumentException("The type has no network.");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeDouble(type.getDialX());
+			out.writeDouble(type.getDialY());
+			out.writeDouble(type.getDialWidth());
+			out.writeDouble(type.getDialHeight());
+			out.writeDouble(type.getMiddleX());
+			out.writeDouble(type.getMiddleY());
+			out.writeDouble(type.getTenthX());
+			out.writeDouble(type.getTenthY());
+			out.writeDouble(type.getHundredthX());
+			out.writeDouble(type.getHundredthY());
+			out.writeDouble(type.getThousandthX());
+			out.writeDouble(type.getThousandthY());
+			out.writeDouble(type.getTenthousandthX());
+			out.writeDouble(type.getTenthousandthY());
+
+			out.writeInt(type.getCharWidth());
+			out.writeInt(type.getCharHeight());
+
+			out.writeInt(type.getBinarization());
+			out.writeInt(type.getBinarizationWindow());
+			out.writeDouble(type.getBinarizationK());
+
+			double[][] W = net.getWeights().getData();
+			out.writeInt(net.getInputCount());
+			out.writeInt(net.getOutputCount());
+			for (int i=0;i<W.length;i++) {
+				for (int j=0;j<W[i].length;j++) {
+					out.writeDouble(W[i][j]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+
+
+	/** Writes a meter type in binary format in place of a file.
+	 * The type is written to a temporary file (name of the file followed by .tmp) that atomically replaces the file once it was
+	 * read back successfully, so that the file is never missing or partly written, even for a reader running at the same time.
+	 * The temporary file is deleted if the replacement fails.
+	 * @param type - meter type to write. Its network must be set.
+	 * @param file - file to replace. It may not exist yet.
+	 * @throws IOException
+	 */
+	public static void replace(TypeSpec type, File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			write(type, tmp);
+			read(tmp);
+
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp.toPath());
+			throw e;
+		}
+	}
+
+
+
+	/** Reads a meter type written by write().
+	 * @param file - file to read.
+	 * @return The meter type.
+	 * @throws IOException if the file cannot be read or is not a binary meter type.
+	 */
+	public static TypeSpec read(File file) throws IOException {
+		return read(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+	}
+
+
+
+	/** Reads a meter type from a buffer containing a binary meter type.
+	 * @param buf - buffer positioned at the beginning of the meter type.
+	 * @return The meter type.
+	 * @throws IOException if the buffer does not contain a binary meter type.
+	 */
+	public static TypeSpec read(ByteBuffer buf) throws IOException {
+		try {
+			if (buf.getInt() != MAGIC) {
+				throw new IOException("Not a binary meter type.");
+			}
+			int version = buf.getInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported version of meter type: " + version + ".");
+			}
+
+			TypeSpec type = new TypeSpec();
+			type.setDialX(buf.getDouble());
+			type.setDialY(buf.getDouble());
+			type.setDialWidth(buf.getDouble());
+			type.setDialHeight(buf.getDouble());
+			type.setMiddleX(buf.getDouble());
+			type.setMiddleY(buf.getDouble());
+			type.setTenthX(buf.getDouble());
+			type.setTenthY(buf.getDouble());
+			type.setHundredthX(buf.getDouble());
+			type.setHundredthY(buf.getDouble());
+			type.setThousandthX(buf.getDouble());
+			type.setThousandthY(buf.getDouble());
+			type.setTenthousandthX(buf.getDouble());
+			type.setTenthousandthY(buf.getDouble());
+
+			type.setCharWidth(buf.getInt());
+			type.setCharHeight(buf.getInt());
+
+			if (version >= 2) {
+				int method = buf.getInt();
+				int window = buf.getInt();
+				double k = buf.getDouble();
+				if (method != Binarizer.FIXED && method != Binarizer.SAUVOLA && method != Binarizer.BRADLEY) {
+					throw new IOException("Unknown binarization method: " + method + ".");
+				}
+				if (window < 0 || !(k >= 0)) {
+					throw new IOException("Wrong binarization parameters: window " + window + ", k " + k + ".");
+				}
+				type.setBinarization(method);
+				type.setBinarizationWindow(window);
+				type.setBinarizationK(k);
+			}
+
+			int inputCount = buf.getInt();
+			int outputCount = buf.getInt();
+			if (inputCount < 1 || outputCount < 1 || (long) inputCount*outputCount*8 > buf.remaining()) {
+				throw new IOException("Wrong dimensions of network: " + inputCount + "x" + outputCount + ".");
+			}
+			DoubleBuffer weights = buf.asDoubleBuffer();
+			double[][] W = new double[outputCount][inputCount];
+			for (int i=0;i<outputCount;i++) {
+				weights.get(W[i]);
+			}
+			buf.position(buf.position() + inputCount*outputCount*8);
+
+			SOM net = new SOM(inputCount, outputCount);
+			net.setWeights(new Matrix(W));
+			type.setNet(net);
+			return type;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated meter type.");
+		}
+	}
+
+
+
+	/** Tests whether a file is a binary meter type.
+	 * @param file - file to test.
+	 * @return true if the file starts with MAGIC.
+	 * @throws IOException
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			byte[] b = new byte[4];
+			int n = 0;
+			while (n < 4) {
+				int r = fis.read(b, n, 4-n);
+				if (r < 0) return false;
+				n += r;
+			}
+			return ByteBuffer.wrap(b).getInt() == MAGIC;
+		} finally {
+			fis.close();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2026 the SmartWaterMeterReading contributors
+ * 
+ * This file is part of SmartWaterMeterReading
+ * 
+ * SmartWaterMeterReading is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * SmartWaterMeterReading is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.recognizer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the meter types stored in a folder (by default the folder res) in memory, so that each type is loaded
+ * only once and shared by all the threads reading pictures. A type is loaded again only when its file changes on disk.
+ * Types can be stored either in the binary format of TypeSpecFormat or as serialized TypeSpec objects.
+ * 
+ * Instances of TypeSpec returned by the registry are shared: they must not be modified.
+ * 
+ * @author SmartWaterMeterReading contributors
+ * 
+ */
+public class TypeSpecRegistry {
+
+	private static TypeSpecRegistry defaultRegistry = new TypeSpecRegistry("res");
+
+	private File dir;
+	private ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+
+
+	/**
+	 * @param dir - folder containing the meter types.
+	 */
+	public TypeSpecRegistry(String dir) {
+		this.dir = new File(dir);
+	}
+
+
+
+	/**
+	 * @return The registry of the folder res.
+	 */
+	public static TypeSpecRegistry getDefault() {
+		return defaultRegistry;
+	}
+
+
+
+	/** Gets a meter type, loading it if it was never loaded or if its file was modified since the last load.
+	 * @param meterType - name of the type.
+	 * @return The specifications of the type.
+	 * @throws IOException if the file of the type cannot be read.
+	 * @throws ClassNotFoundException if the file is neither a binary meter type nor a serialized TypeSpec.
+	 */
+	public TypeSpec get(String meterType) throws IOException, ClassNotFoundException {
+		File file = new File(dir, meterType);
+		Entry e = entries.get(meterType);
+		if (e != null && e.isUpToDate(file)) {
+			return e.type;
+		}
+		return load(meterType, file);
+	}
+
+
+
+	/** Forgets all the loaded types.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+
+
+	private synchronized TypeSpec load(String meterType, File file) throws IOException, ClassNotFoundException {
+		Entry e = entries.get(meterType);
+		if (e != null && e.isUpToDate(file)) {
+			return e.type;
+		}
+
+		long lastModified = file.lastModified();
+		long length = file.length();
+		TypeSpec type = read(file);
+
+		entries.put(meterType, new Entry(type, lastModified, length));
+		return type;
+	}
+
+
+
+	/** Reads a meter type from a file, whatever its format.
+	 * @param file - file in the binary format of TypeSpecFormat or containing a serialized TypeSpec.
+	 * @return The meter type.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static TypeSpec read(File file) throws IOException, ClassNotFoundException {
+		if (TypeSpecFormat.isBinary(file)) {
+			return TypeSpecFormat.read(file);
+		}
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			ObjectInputStream ois = new ObjectInputStream(fis);
+			return (TypeSpec) ois.readObject();
+		} finally {
+			fis.close();
+		}
+	}
+
+
+
+	/**
+	 * A loaded type and the state of its file when it was loaded.
+	 */
+	private static class Entry {
+
+		private final TypeSpec type;
+		private final long lastModified;
+		private final long length;
+
+		private Entry(TypeSpec type, long lastModified, long length) {
+			this.type = type;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		private boolean isUpToDate(File file) {
+			return file.lastModified() == lastModified && file.length() == length;
+		}
+	}
+}